@@ -0,0 +1,461 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.SwingUtilities;
+
+import io.github.markbernard.jnotepad.document.MappedFile;
+
+/**
+ * Read only hexadecimal view of a binary file. The file is memory mapped and 
+ * only the rows that are on screen are read when painting, so files of any 
+ * size can be viewed.
+ * 
+ * @author Mark Bernard
+ */
+public class HexFileViewer extends JPanel {
+    private static final long serialVersionUID = -5468143302811906614L;
+    private static final int BYTES_PER_ROW = 16;
+    private static final int WHEEL_ROWS = 3;
+    private static final int SEARCH_BLOCK_SIZE = 1 << 20;
+    // the scroll bar only holds an int so very large files move it more than one row per unit
+    private static final long MAX_SCROLL_UNITS = 1L << 30;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final Color CARET_ROW_COLOR = new Color(232, 242, 254);
+    private static final Color SELECTION_COLOR = new Color(173, 214, 255);
+
+    private JNotepad jNotepad;
+    private MappedFile mappedFile;
+    private JScrollBar verticalBar;
+    private ViewCanvas canvas;
+    private byte[] rowBuffer;
+    private long rowCount;
+    private long scrollScale;
+    private boolean scrolling;
+    private long topRow;
+    private long caret;
+    private int selectionLength;
+    private boolean searching;
+    private volatile boolean closed;
+
+    /**
+     * @param jNotepad 
+     * @param mappedFile The file to show.
+     */
+    public HexFileViewer(JNotepad jNotepad, MappedFile mappedFile) {
+        this.jNotepad = jNotepad;
+        this.mappedFile = mappedFile;
+        rowBuffer = new byte[0];
+        rowCount = Math.max(1, (mappedFile.getSize() + BYTES_PER_ROW - 1) / BYTES_PER_ROW);
+        scrollScale = Math.max(1, (rowCount + MAX_SCROLL_UNITS - 1) / MAX_SCROLL_UNITS);
+        setLayout(new BorderLayout());
+        canvas = new ViewCanvas();
+        add(canvas, BorderLayout.CENTER);
+        verticalBar = new JScrollBar(JScrollBar.VERTICAL);
+        add(verticalBar, BorderLayout.EAST);
+        verticalBar.addAdjustmentListener((event) -> {
+            if (!scrolling) {
+                topRow = Math.min(event.getValue() * scrollScale, getMaximumTopRow());
+                canvas.repaint();
+            }
+        });
+        canvas.addMouseWheelListener((event) -> scrollTo(topRow + event.getWheelRotation() * WHEEL_ROWS));
+        canvas.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                canvas.requestFocusInWindow();
+                long row = topRow + e.getY() / canvas.getRowHeight();
+                select(row * BYTES_PER_ROW + canvas.getColumnAt(e.getX()), 0);
+            }
+        });
+        canvas.addKeyListener(new ViewKeyListener());
+        canvas.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                updateScrollRange();
+            }
+        });
+    }
+
+    /**
+     * Give the keyboard focus to the view and show the caret position in the status bar.
+     */
+    public void shown() {
+        canvas.requestFocusInWindow();
+        updateStatusBar();
+    }
+
+    /**
+     * Stop any search and release the file.
+     */
+    public void close() {
+        closed = true;
+        mappedFile.close();
+    }
+
+    /**
+     * Ask the user for an offset and move the caret to it.
+     * 
+     * @param parentFrame
+     */
+    public void goToOffset(JFrame parentFrame) {
+        String input = JOptionPane.showInputDialog(parentFrame, "Offset (hexadecimal if it starts with 0x):", 
+                "Go To Offset", JOptionPane.QUESTION_MESSAGE);
+        if (input != null && !input.trim().isEmpty()) {
+            String offset = input.trim();
+            try {
+                if (offset.startsWith("0x") || offset.startsWith("0X")) {
+                    select(Long.parseLong(offset.substring(2), 16), 0);
+                } else {
+                    select(Long.parseLong(offset), 0);
+                }
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(parentFrame, offset + " is not a valid offset.", 
+                        "Go To Offset", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Find the next occurrence of a byte pattern. A term made only of pairs of 
+     * hexadecimal digits separated by spaces, like 4D 5A, is searched for as 
+     * those bytes. Any other term is searched for as UTF-8 text. The search runs 
+     * in the background and selects the bytes when they are found.
+     * 
+     * @param findTerm
+     * @param matchCase Only used for text terms.
+     * @param findDownDirection
+     */
+    public void findNext(String findTerm, boolean matchCase, boolean findDownDirection) {
+        if (searching || findTerm.isEmpty()) {
+            return;
+        }
+        boolean hexPattern = isHexPattern(findTerm);
+        byte[] pattern = hexPattern ? parseHexPattern(findTerm) : findTerm.getBytes(StandardCharsets.UTF_8);
+        boolean ignoreCase = !hexPattern && !matchCase;
+        if (ignoreCase) {
+            toLowerCase(pattern, 0, pattern.length);
+        }
+        long start = findDownDirection ? (selectionLength > 0 ? caret + 1 : caret) : caret;
+        searching = true;
+        jNotepad.updateStatusBar("Searching...");
+        new Thread(() -> {
+            long found = -1;
+            try {
+                found = findDownDirection ? indexOf(pattern, ignoreCase, start) : lastIndexOf(pattern, ignoreCase, start);
+            } catch (IOException e) {
+                //the file can no longer be read, treated as not found
+            }
+            long result = found;
+            SwingUtilities.invokeLater(() -> {
+                searching = false;
+                if (closed) {
+                    return;
+                }
+                if (result >= 0) {
+                    select(result, pattern.length);
+                } else {
+                    jNotepad.updateStatusBar("Cannot find \"" + findTerm + "\"");
+                }
+            });
+        }, "Hex Search").start();
+    }
+
+    private long indexOf(byte[] pattern, boolean ignoreCase, long from) throws IOException {
+        byte[] block = new byte[SEARCH_BLOCK_SIZE + pattern.length - 1];
+        long last = mappedFile.getSize() - pattern.length;
+        long position = from;
+        while (position <= last && !closed) {
+            int read = mappedFile.read(position, block, 0, block.length);
+            if (ignoreCase) {
+                toLowerCase(block, 0, read);
+            }
+            int end = read - pattern.length;
+            for (int i=0;i<=end;i++) {
+                if (matches(block, i, pattern)) {
+                    return position + i;
+                }
+            }
+            // the blocks overlap so a match across the boundary is found in the next one
+            position += end + 1;
+        }
+        
+        return -1;
+    }
+
+    private long lastIndexOf(byte[] pattern, boolean ignoreCase, long before) throws IOException {
+        byte[] block = new byte[SEARCH_BLOCK_SIZE + pattern.length - 1];
+        long blockEnd = Math.min(before - 1, mappedFile.getSize() - pattern.length);
+        while (blockEnd >= 0 && !closed) {
+            long blockStart = Math.max(0, blockEnd - SEARCH_BLOCK_SIZE + 1);
+            int starts = (int)(blockEnd - blockStart) + 1;
+            int read = mappedFile.read(blockStart, block, 0, starts + pattern.length - 1);
+            if (ignoreCase) {
+                toLowerCase(block, 0, read);
+            }
+            for (int i=starts-1;i>=0;i--) {
+                if (matches(block, i, pattern)) {
+                    return blockStart + i;
+                }
+            }
+            blockEnd = blockStart - 1;
+        }
+        
+        return -1;
+    }
+
+    private static boolean matches(byte[] block, int offset, byte[] pattern) {
+        for (int i=0;i<pattern.length;i++) {
+            if (block[offset + i] != pattern[i]) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+
+    private static void toLowerCase(byte[] data, int offset, int length) {
+        for (int i=offset;i<offset+length;i++) {
+            if (data[i] >= 'A' && data[i] <= 'Z') {
+                data[i] += 'a' - 'A';
+            }
+        }
+    }
+
+    private static boolean isHexPattern(String findTerm) {
+        return findTerm.trim().matches("[0-9A-Fa-f]{2}(\\s+[0-9A-Fa-f]{2})*");
+    }
+
+    private static byte[] parseHexPattern(String findTerm) {
+        String[] values = findTerm.trim().split("\\s+");
+        byte[] result = new byte[values.length];
+        for (int i=0;i<values.length;i++) {
+            result[i] = (byte)Integer.parseInt(values[i], 16);
+        }
+        
+        return result;
+    }
+
+    private void select(long position, int length) {
+        caret = Math.max(0, Math.min(position, mappedFile.getSize() - 1));
+        selectionLength = length;
+        long row = caret / BYTES_PER_ROW;
+        int rows = canvas.getVisibleRows();
+        if (row < topRow) {
+            scrollTo(row);
+        } else if (row >= topRow + rows) {
+            scrollTo(row - rows + 1);
+        }
+        updateStatusBar();
+        canvas.repaint();
+    }
+
+    private long getMaximumTopRow() {
+        return Math.max(0, rowCount - canvas.getVisibleRows());
+    }
+
+    private void scrollTo(long row) {
+        topRow = Math.max(0, Math.min(row, getMaximumTopRow()));
+        scrolling = true;
+        verticalBar.setValue((int)(topRow / scrollScale));
+        scrolling = false;
+        canvas.repaint();
+    }
+
+    private void updateScrollRange() {
+        int rows = canvas.getVisibleRows();
+        int extent = (int)Math.max(1, rows / scrollScale);
+        int maximum = (int)Math.max(extent, (rowCount + scrollScale - 1) / scrollScale);
+        scrolling = true;
+        verticalBar.setValues((int)(topRow / scrollScale), extent, 0, maximum);
+        verticalBar.setBlockIncrement(Math.max(1, extent - 1));
+        scrolling = false;
+    }
+
+    private void updateStatusBar() {
+        String selection = selectionLength > 1 ? String.format(", %d bytes selected", selectionLength) : "";
+        jNotepad.updateStatusBar(String.format("Offset %d (0x%X) of %d%s", caret, caret, mappedFile.getSize(), selection));
+    }
+
+    class ViewCanvas extends JComponent {
+        private static final long serialVersionUID = 7751270926658035120L;
+        private int offsetDigits;
+
+        ViewCanvas() {
+            setFocusable(true);
+            // the columns only line up with a fixed width font
+            setFont(new Font(Font.MONOSPACED, Font.PLAIN, ApplicationPreferences.getCurrentFont().getSize()));
+            offsetDigits = Math.max(8, Long.toHexString(mappedFile.getSize()).length());
+        }
+
+        int getRowHeight() {
+            return getFontMetrics(getFont()).getHeight();
+        }
+
+        int getVisibleRows() {
+            return Math.max(1, getHeight() / getRowHeight());
+        }
+
+        /**
+         * Characters before the first hex column.
+         */
+        private int getHexStart() {
+            return offsetDigits + 2;
+        }
+
+        /**
+         * Characters before the hex column of a byte in the row, with an extra space after the eighth byte.
+         */
+        private int getHexColumn(int index) {
+            return getHexStart() + index * 3 + (index >= BYTES_PER_ROW / 2 ? 1 : 0);
+        }
+
+        private int getTextStart() {
+            return getHexColumn(BYTES_PER_ROW) + 1;
+        }
+
+        /**
+         * @return The index in the row of the byte shown at the position.
+         */
+        int getColumnAt(int x) {
+            int column = x / getFontMetrics(getFont()).charWidth('0');
+            int index;
+            if (column >= getTextStart()) {
+                index = column - getTextStart();
+            } else {
+                int hexColumn = column - getHexStart();
+                index = (hexColumn > BYTES_PER_ROW / 2 * 3 ? hexColumn - 1 : hexColumn) / 3;
+            }
+            
+            return Math.max(0, Math.min(index, BYTES_PER_ROW - 1));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            g.setFont(getFont());
+            FontMetrics fm = g.getFontMetrics();
+            int rowHeight = fm.getHeight();
+            int charWidth = fm.charWidth('0');
+            g.setColor(Color.LIGHT_GRAY);
+            g.fillRect(0, 0, (offsetDigits + 1) * charWidth, getHeight());
+            int rows = getVisibleRows() + 1;
+            if (rowBuffer.length < rows * BYTES_PER_ROW) {
+                rowBuffer = new byte[rows * BYTES_PER_ROW];
+            }
+            long start = topRow * BYTES_PER_ROW;
+            int read;
+            try {
+                read = mappedFile.read(start, rowBuffer, 0, rows * BYTES_PER_ROW);
+            } catch (IOException e) {
+                //nothing to show if the file can no longer be read
+                e.printStackTrace();
+                return;
+            }
+            long selectionEnd = caret + Math.max(1, selectionLength);
+            char[] line = new char[getTextStart() + BYTES_PER_ROW];
+            for (int row=0;row * BYTES_PER_ROW < read;row++) {
+                long rowStart = start + row * BYTES_PER_ROW;
+                int y = row * rowHeight;
+                int count = Math.min(BYTES_PER_ROW, read - row * BYTES_PER_ROW);
+                if (caret >= rowStart && caret < rowStart + BYTES_PER_ROW) {
+                    g.setColor(CARET_ROW_COLOR);
+                    g.fillRect((offsetDigits + 1) * charWidth, y, getWidth(), rowHeight);
+                }
+                g.setColor(SELECTION_COLOR);
+                for (int i=0;i<count;i++) {
+                    long position = rowStart + i;
+                    if (position >= caret && position < selectionEnd) {
+                        g.fillRect(getHexColumn(i) * charWidth, y, charWidth * 2, rowHeight);
+                        g.fillRect((getTextStart() + i) * charWidth, y, charWidth, rowHeight);
+                    }
+                }
+                Arrays.fill(line, ' ');
+                for (int digit=0;digit<offsetDigits;digit++) {
+                    line[offsetDigits - 1 - digit] = HEX_DIGITS[(int)(rowStart >>> (digit * 4)) & 0xF];
+                }
+                for (int i=0;i<count;i++) {
+                    int b = rowBuffer[row * BYTES_PER_ROW + i] & 0xFF;
+                    line[getHexColumn(i)] = HEX_DIGITS[b >>> 4];
+                    line[getHexColumn(i) + 1] = HEX_DIGITS[b & 0xF];
+                    line[getTextStart() + i] = b >= 0x20 && b < 0x7F ? (char)b : '.';
+                }
+                g.setColor(Color.BLACK);
+                g.drawChars(line, 0, line.length, 0, y + fm.getAscent());
+            }
+        }
+    }
+
+    class ViewKeyListener extends KeyAdapter {
+        @Override
+        public void keyPressed(KeyEvent e) {
+            int rowBytes = canvas.getVisibleRows() * BYTES_PER_ROW;
+            switch (e.getKeyCode()) {
+                case KeyEvent.VK_LEFT:
+                    select(caret - 1, 0);
+                    break;
+                case KeyEvent.VK_RIGHT:
+                    select(caret + 1, 0);
+                    break;
+                case KeyEvent.VK_UP:
+                    select(caret - BYTES_PER_ROW, 0);
+                    break;
+                case KeyEvent.VK_DOWN:
+                    select(caret + BYTES_PER_ROW, 0);
+                    break;
+                case KeyEvent.VK_PAGE_UP:
+                    select(caret - rowBytes, 0);
+                    break;
+                case KeyEvent.VK_PAGE_DOWN:
+                    select(caret + rowBytes, 0);
+                    break;
+                case KeyEvent.VK_HOME:
+                    select(e.isControlDown() ? 0 : caret - caret % BYTES_PER_ROW, 0);
+                    break;
+                case KeyEvent.VK_END:
+                    select(e.isControlDown() ? mappedFile.getSize() - 1 : caret - caret % BYTES_PER_ROW + BYTES_PER_ROW - 1, 0);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
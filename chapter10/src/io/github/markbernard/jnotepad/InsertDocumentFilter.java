@@ -23,9 +23,12 @@ import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DocumentFilter;
 
+import io.github.markbernard.jnotepad.document.LineEndings;
+
 /**
  * Any time a character is inserted this class will ensure
- * overwrite mode works correctly.
+ * overwrite mode works correctly. Inserted line breaks are changed to \n
+ * so text from the clipboard or a drop is held the same way as a loaded file.
  * 
  * @author Mark Bernard
  */
@@ -42,12 +45,14 @@ public class InsertDocumentFilter extends DocumentFilter {
 
     @Override
     public void insertString(FilterBypass fb, int offset, String string, AttributeSet attr) throws BadLocationException {
+        string = LineEndings.normalize(string);
         super.insertString(fb, offset, string, attr);
         textDocument.processInsert(offset + string.length(), string.length());
     }
 
     @Override
     public void replace(FilterBypass fb, int offset, int length, String text, AttributeSet attrs) throws BadLocationException {
+        text = LineEndings.normalize(text);
         super.replace(fb, offset, length, text, attrs);
         textDocument.processInsert(offset + text.length(), text.length());
     }
@@ -24,6 +24,7 @@ import java.awt.Color;
 import java.awt.Desktop;
 import java.awt.FlowLayout;
 import java.awt.Font;
+import java.awt.Insets;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.DataFlavor;
@@ -34,6 +35,7 @@ import java.awt.event.WindowListener;
 import java.awt.print.PrinterException;
 import java.awt.print.PrinterJob;
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.text.MessageFormat;
 import java.util.List;
@@ -41,6 +43,7 @@ import java.util.List;
 import javax.print.attribute.HashPrintRequestAttributeSet;
 import javax.print.attribute.PrintRequestAttributeSet;
 import javax.swing.BorderFactory;
+import javax.swing.JButton;
 import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -48,7 +51,9 @@ import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JTabbedPane;
 import javax.swing.JToolBar;
 import javax.swing.SwingUtilities;
@@ -63,9 +68,13 @@ import io.github.markbernard.jnotepad.action.FormatAction;
 import io.github.markbernard.jnotepad.action.HelpAction;
 import io.github.markbernard.jnotepad.action.ViewAction;
 import io.github.markbernard.jnotepad.dialog.AboutDialog;
+import io.github.markbernard.jnotepad.dialog.ArchiveEntryDialog;
 import io.github.markbernard.jnotepad.dialog.EncodingDialog;
 import io.github.markbernard.jnotepad.dialog.FontDialog;
+import io.github.markbernard.jnotepad.dialog.HistoryDialog;
 import io.github.markbernard.jnotepad.dialog.SearchDialog;
+import io.github.markbernard.jnotepad.document.Compression;
+import io.github.markbernard.jnotepad.document.EditJournal;
 
 /**
  * Main application class.
@@ -85,7 +94,10 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
     private JLabel insertLabel;
     private JLabel readOnlyLabel;
     private JLabel encodingLabel;
+    private JPanel loadingPanel;
+    private JProgressBar loadingProgressBar;
     private JCheckBoxMenuItem formatWordWrap;
+    private JCheckBoxMenuItem viewFollow;
     private JToolBar toolbar;
     private JMenu fileRecentDocumentsMenu;
     private JNotepad self;
@@ -132,6 +144,35 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
         parentFrame.setVisible(true);
         currentDocument.shown();
         parentFrame.setIconImages(IconGenerator.loadImages("/res/icons/JNotepadIconSmall.png", "/res/icons/JNotepadIcon.png"));
+        restoreDocuments();
+    }
+
+    /**
+     * Reopen the documents that still had unsaved changes when the application
+     * last ended without closing them.
+     */
+    private void restoreDocuments() {
+        List<EditJournal.Recovery> recoveries = EditJournal.recover();
+        if (!recoveries.isEmpty()) {
+            boolean removeInitialNewDoc = documentTabs.getTabCount() == 1 && !currentDocument.isDirty();
+            TextDocument initialDoc = currentDocument;
+            StringBuilder changedFiles = new StringBuilder();
+            for (EditJournal.Recovery recovery : recoveries) {
+                TextDocument doc = new TextDocument(this, newDocumentCounter++, recovery);
+                addDocumentToTabs(doc);
+                if (recovery.isBaseChanged()) {
+                    changedFiles.append("<p>").append(recovery.getBase()).append("</p>");
+                }
+            }
+            if (removeInitialNewDoc) {
+                documentTabs.remove(initialDoc);
+            }
+            if (changedFiles.length() > 0) {
+                JOptionPane.showMessageDialog(this, "<html><p>Unsaved changes were restored to files that were modified after the changes were made.</p>" + 
+                        "<p>Check these documents before saving them:</p>" + changedFiles + "</html>", 
+                        "Documents restored", JOptionPane.WARNING_MESSAGE);
+            }
+        }
     }
     
     private void createMenus() {
@@ -148,6 +189,8 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
         fileMenu.add(fileSaveItem);
         JMenuItem fileSaveAsItem = new JMenuItem(new FileAction.SaveAsAction(this));
         fileMenu.add(fileSaveAsItem);
+        JMenuItem fileHistoryItem = new JMenuItem(new FileAction.HistoryAction(this));
+        fileMenu.add(fileHistoryItem);
         fileMenu.addSeparator();
         JMenuItem filePageSetupItem = new JMenuItem(new FileAction.PageSetupAction(this));
         fileMenu.add(filePageSetupItem);
@@ -205,6 +248,8 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
         JCheckBoxMenuItem viewStatus = new JCheckBoxMenuItem(ViewAction.StatusAction.getInstance(this));
         viewStatus.setSelected(ApplicationPreferences.isStatusBar());
         viewMenu.add(viewStatus);
+        viewFollow = new JCheckBoxMenuItem(new ViewAction.FollowAction(this));
+        viewMenu.add(viewFollow);
 
         JMenu helpMenu = new JMenu(new HelpAction());
         bar.add(helpMenu);
@@ -266,6 +311,22 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
         encodingPanel.add(encodingLabel, BorderLayout.WEST);
         encodingLabel.setFont(new Font("Consolas", Font.PLAIN, 14));
 
+        loadingPanel = new JPanel(new BorderLayout(3, 0));
+        statusBarPanel.add(loadingPanel);
+        setStausBorder(loadingPanel);
+        loadingProgressBar = new JProgressBar(0, 100);
+        loadingPanel.add(loadingProgressBar, BorderLayout.CENTER);
+        loadingProgressBar.setStringPainted(true);
+        JButton loadingCancelButton = new JButton("Cancel");
+        loadingPanel.add(loadingCancelButton, BorderLayout.EAST);
+        loadingCancelButton.setMargin(new Insets(0, 3, 0, 3));
+        loadingCancelButton.addActionListener((event) -> {
+            TextDocument doc = currentDocument;
+            doc.cancelLoading();
+            closeDocument(doc);
+        });
+        loadingPanel.setVisible(false);
+
         if (ApplicationPreferences.isStatusBar()) {
             add(statusBarPanel, BorderLayout.SOUTH);
         }
@@ -315,7 +376,7 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
     }
 
     private void updateReadOnly() {
-        if (readOnly) {
+        if (readOnly || currentDocument.isReadOnly()) {
             readOnlyLabel.setForeground(Color.BLACK);
             readOnlyLabel.setText("Read Only ");
         } else {
@@ -328,6 +389,41 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
         encodingLabel.setText(currentDocument.getEncoding());
     }
 
+    /**
+     * Show whether the provided document follows its file if it is the selected one.
+     * 
+     * @param doc
+     */
+    public void updateFollow(TextDocument doc) {
+        if (doc == currentDocument) {
+            viewFollow.setSelected(doc.isFollowing());
+        }
+    }
+
+    /**
+     * Toggle following the end of the file in the current document.
+     */
+    public void follow() {
+        SwingUtilities.invokeLater(() -> currentDocument.setFollowing(!currentDocument.isFollowing()));
+    }
+
+    /**
+     * Show the loading progress of the provided document if it is the selected one.
+     * 
+     * @param doc
+     */
+    public void updateLoadProgress(TextDocument doc) {
+        if (doc == currentDocument) {
+            loadingProgressBar.setValue(doc.getLoadProgress());
+            if (loadingPanel.isVisible() != doc.isLoading()) {
+                loadingPanel.setVisible(doc.isLoading());
+                statusBarPanel.revalidate();
+            }
+            updateReadOnly();
+            updateEncoding();
+        }
+    }
+
     private void createToolbar() {
         toolbar = new JToolBar();
         parentFrame.add(toolbar, BorderLayout.NORTH);
@@ -405,6 +501,7 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
             saveCompleted = doc.requestClose(false);
             if (saveCompleted) {
                 documentTabs.removeTabAt(documentTabs.indexOfComponent(doc));
+                doc.closed();
             } else {
                 break;
             }
@@ -412,6 +509,8 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
         
         if (saveCompleted) {
             ApplicationPreferences.savePrefs(parentFrame);
+            TextDocument.waitForSaves();
+            EditJournal.waitForDeletes();
             System.exit(0);
         }
     }
@@ -444,15 +543,37 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
         if (documentTabs.getTabCount() == 1 && currentDocument.getTitle().equals("new 0") & !currentDocument.isDirty()) {
             removeInitialNewDoc = true;
         }
-        TextDocument doc = new TextDocument(this, selectedFile);
-        addDocumentToTabs(doc);
-        ApplicationPreferences.addDocument(doc.getFullFilePath());
+        if (isArchive(selectedFile)) {
+            ArchiveEntryDialog archiveEntryDialog = new ArchiveEntryDialog(parentFrame, selectedFile);
+            if (!archiveEntryDialog.showDialog()) {
+                return;
+            }
+            for (String entryName : archiveEntryDialog.getSelectedEntries()) {
+                addDocumentToTabs(new TextDocument(this, selectedFile, entryName));
+            }
+            ApplicationPreferences.addDocument(selectedFile.getAbsolutePath());
+        } else {
+            TextDocument doc = new TextDocument(this, selectedFile);
+            addDocumentToTabs(doc);
+            ApplicationPreferences.addDocument(doc.getFullFilePath());
+        }
         updateRecentDocumentsMenu();
         if (removeInitialNewDoc) {
             documentTabs.removeTabAt(0);
         }
     }
     
+    private boolean isArchive(File file) {
+        boolean result = false;
+        try {
+            result = Compression.detect(file) == Compression.ZIP;
+        } catch (IOException e) {
+            //the file is opened as text and the error reported then
+        }
+        
+        return result;
+    }
+    
     /**
      * @param filePath
      */
@@ -520,11 +641,38 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
      * Update the main title with the currently selected tab.
      */
     public void setTitle() {
+        setTitle(currentDocument);
+    }
+
+    /**
+     * Update the tab of the provided document, and the main title if it is the selected tab.
+     * 
+     * @param doc
+     */
+    public void setTitle(TextDocument doc) {
+        SwingUtilities.invokeLater(() -> {
+            if (doc == currentDocument) {
+                parentFrame.setTitle(doc.getTitle() + " - " + APPLICATION_TITLE);
+            }
+            int index = documentTabs.indexOfComponent(doc);
+            if (index > -1) {
+                TabComponent tabComponent = (TabComponent) documentTabs.getTabComponentAt(index);
+                tabComponent.setName(doc.getTitle());
+            }
+        });
+    }
+
+    /**
+     * Show the saved versions of the current document.
+     */
+    public void showHistory() {
         SwingUtilities.invokeLater(() -> {
-            parentFrame.setTitle(currentDocument.getTitle() + " - " + APPLICATION_TITLE);
-            int index = documentTabs.indexOfComponent(currentDocument);
-            TabComponent tabComponent = (TabComponent) documentTabs.getTabComponentAt(index);
-            tabComponent.setName(currentDocument.getTitle());
+            File file = currentDocument.getFile();
+            if (file == null) {
+                JOptionPane.showMessageDialog(this, "The document has not been saved yet.", "Local History", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                new HistoryDialog(parentFrame, currentDocument, file).showDialog();
+            }
         });
     }
 
@@ -806,13 +954,20 @@ public class JNotepad extends JPanel implements WindowListener, KeyListener {
     public void closeTab(TabComponent tabComponent) {
         int index = documentTabs.indexOfTabComponent(tabComponent);
         if (index > -1) {
-            TextDocument doc = (TextDocument) documentTabs.getComponentAt(index);
-            if (doc.requestClose(documentTabs.getTabCount() == 1)) {
-                if (documentTabs.getTabCount() == 1) {
-                    newDocument();
-                }
-                documentTabs.remove(doc);
+            closeDocument((TextDocument) documentTabs.getComponentAt(index));
+        }
+    }
+
+    /**
+     * @param doc
+     */
+    public void closeDocument(TextDocument doc) {
+        if (doc.requestClose(documentTabs.getTabCount() == 1)) {
+            if (documentTabs.getTabCount() == 1) {
+                newDocument();
             }
+            documentTabs.remove(doc);
+            doc.closed();
         }
     }
 
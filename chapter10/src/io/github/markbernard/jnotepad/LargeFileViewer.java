@@ -0,0 +1,303 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+import javax.swing.SwingUtilities;
+
+import io.github.markbernard.jnotepad.document.MappedFile;
+import io.github.markbernard.jnotepad.document.PageLineIndex;
+
+/**
+ * Read only view of a file that is too large to load into a Swing document.
+ * The file is memory mapped and only the lines that are on screen are decoded
+ * when painting. A line longer than MAX_LINE_BYTES shows its start followed by
+ * the number of bytes left out.
+ * 
+ * @author Mark Bernard
+ */
+public class LargeFileViewer extends JPanel {
+    private static final long serialVersionUID = 2519011578046839213L;
+    private static final int MAX_LINE_BYTES = 4096;
+    private static final int WHEEL_LINES = 3;
+    private static final Color CARET_LINE_COLOR = new Color(232, 242, 254);
+
+    private JNotepad jNotepad;
+    private MappedFile mappedFile;
+    private PageLineIndex lineIndex;
+    private Charset charset;
+    private JScrollBar verticalBar;
+    private JScrollBar horizontalBar;
+    private ViewCanvas canvas;
+    private AtomicBoolean updatePending;
+    private byte[] lineBuffer;
+    private long topLine;
+    private long caretLine;
+
+    /**
+     * @param jNotepad 
+     * @param mappedFile The file to show.
+     * @param charset The encoding used to decode lines.
+     */
+    public LargeFileViewer(JNotepad jNotepad, MappedFile mappedFile, Charset charset) {
+        this.jNotepad = jNotepad;
+        this.mappedFile = mappedFile;
+        this.charset = charset;
+        lineBuffer = new byte[MAX_LINE_BYTES];
+        updatePending = new AtomicBoolean();
+        setLayout(new BorderLayout());
+        canvas = new ViewCanvas();
+        add(canvas, BorderLayout.CENTER);
+        verticalBar = new JScrollBar(JScrollBar.VERTICAL);
+        add(verticalBar, BorderLayout.EAST);
+        verticalBar.addAdjustmentListener((event) -> {
+            topLine = event.getValue();
+            canvas.repaint();
+        });
+        horizontalBar = new JScrollBar(JScrollBar.HORIZONTAL, 0, 10, 0, MAX_LINE_BYTES);
+        add(horizontalBar, BorderLayout.SOUTH);
+        horizontalBar.addAdjustmentListener((event) -> canvas.repaint());
+        canvas.addMouseWheelListener((event) -> scrollTo(topLine + event.getWheelRotation() * WHEEL_LINES));
+        canvas.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                canvas.requestFocusInWindow();
+                moveCaret(topLine + e.getY() / canvas.getLineHeight());
+            }
+        });
+        canvas.addKeyListener(new ViewKeyListener());
+        canvas.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                updateScrollRange();
+            }
+        });
+        lineIndex = new PageLineIndex(mappedFile, () -> {
+            // coalesce the progress notifications coming from the indexing thread
+            if (updatePending.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(() -> {
+                    updatePending.set(false);
+                    updateScrollRange();
+                    canvas.repaint();
+                });
+            }
+        });
+        lineIndex.start();
+    }
+
+    /**
+     * Move the caret to the start of a line.
+     * 
+     * @param lineNumber One based line number.
+     */
+    public void goToLine(int lineNumber) {
+        moveCaret(lineNumber - 1);
+    }
+
+    /**
+     * Give the keyboard focus to the view and show the caret position in the status bar.
+     */
+    public void shown() {
+        canvas.requestFocusInWindow();
+        updateStatusBar();
+    }
+
+    /**
+     * Stop indexing and release the file.
+     */
+    public void close() {
+        lineIndex.cancel();
+        mappedFile.close();
+    }
+
+    private void moveCaret(long line) {
+        caretLine = Math.max(0, Math.min(line, lineIndex.getLineCount() - 1));
+        int rows = canvas.getVisibleRows();
+        if (caretLine < topLine) {
+            scrollTo(caretLine);
+        } else if (caretLine >= topLine + rows) {
+            scrollTo(caretLine - rows + 1);
+        }
+        updateStatusBar();
+        canvas.repaint();
+    }
+
+    private void scrollTo(long line) {
+        long maximum = Math.max(0, lineIndex.getLineCount() - canvas.getVisibleRows());
+        verticalBar.setValue((int)Math.max(0, Math.min(line, Math.min(maximum, Integer.MAX_VALUE - 1))));
+    }
+
+    private void updateScrollRange() {
+        int rows = canvas.getVisibleRows();
+        long lineCount = Math.min(lineIndex.getLineCount(), Integer.MAX_VALUE - 1);
+        verticalBar.setValues((int)topLine, rows, 0, (int)Math.max(rows, lineCount));
+        verticalBar.setBlockIncrement(Math.max(1, rows - 1));
+    }
+
+    private void updateStatusBar() {
+        try {
+            long offset = lineIndex.getLineOffset(caretLine);
+            jNotepad.updateStatusBar(String.format("Ln %d, Byte %d%s", caretLine + 1, Math.max(0, offset), 
+                    lineIndex.isComplete() ? "" : " (indexing)"));
+        } catch (IOException e) {
+            //not critical if the position in the
+            //status bar does not get updated.
+            e.printStackTrace();
+        }
+    }
+
+    class ViewCanvas extends JComponent {
+        private static final long serialVersionUID = -2944604426007788640L;
+
+        ViewCanvas() {
+            setFocusable(true);
+            setFont(ApplicationPreferences.getCurrentFont());
+        }
+
+        int getLineHeight() {
+            return getFontMetrics(getFont()).getHeight();
+        }
+
+        int getVisibleRows() {
+            return Math.max(1, getHeight() / getLineHeight());
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, getWidth(), getHeight());
+            g.setFont(getFont());
+            FontMetrics fm = g.getFontMetrics();
+            int lineHeight = fm.getHeight();
+            String widest = String.valueOf(lineIndex.getLineCount());
+            int gutterWidth = fm.stringWidth(widest) + fm.charWidth(' ');
+            g.setColor(Color.LIGHT_GRAY);
+            g.fillRect(0, 0, gutterWidth, getHeight());
+            int firstColumn = horizontalBar.getValue();
+            long size = mappedFile.getSize();
+            try {
+                long offset = lineIndex.getLineOffset(topLine);
+                int rows = getVisibleRows() + 1;
+                for (int row=0;row<rows && offset >= 0 && offset <= size;row++) {
+                    long line = topLine + row;
+                    int y = row * lineHeight;
+                    int read = mappedFile.read(offset, lineBuffer, 0, lineBuffer.length);
+                    int length = 0;
+                    while (length < read && lineBuffer[length] != '\n') {
+                        length++;
+                    }
+                    long nextOffset;
+                    if (length < read) {
+                        nextOffset = offset + length + 1;
+                    } else {
+                        long newLine = mappedFile.indexOf(offset + read, (byte)'\n', size);
+                        nextOffset = newLine < 0 ? -1 : newLine + 1;
+                    }
+                    // only the start of a very long line is read, the rest is counted
+                    long hidden = length < read ? 0 : (nextOffset < 0 ? size : nextOffset - 1) - (offset + read);
+                    if (hidden == 0 && length > 0 && lineBuffer[length - 1] == '\r') {
+                        length--;
+                    }
+                    if (line == caretLine) {
+                        g.setColor(CARET_LINE_COLOR);
+                        g.fillRect(gutterWidth, y, getWidth() - gutterWidth, lineHeight);
+                    }
+                    g.setColor(Color.BLACK);
+                    String label = String.valueOf(line + 1);
+                    g.drawString(label, gutterWidth - fm.charWidth(' ') / 2 - fm.stringWidth(label), y + fm.getAscent());
+                    String text = new String(lineBuffer, 0, length, charset).replace("\t", "    ");
+                    int x = gutterWidth + fm.charWidth(' ');
+                    if (firstColumn < text.length()) {
+                        String shown = text.substring(firstColumn);
+                        g.drawString(shown, x, y + fm.getAscent());
+                        x += fm.stringWidth(shown);
+                    }
+                    if (hidden > 0) {
+                        g.setColor(Color.GRAY);
+                        g.drawString(String.format(" ... %,d more bytes not shown", hidden), x, y + fm.getAscent());
+                    }
+                    offset = nextOffset;
+                    if (offset == size) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                //nothing to show if the file can no longer be read
+                e.printStackTrace();
+            }
+        }
+    }
+
+    class ViewKeyListener extends KeyAdapter {
+        @Override
+        public void keyPressed(KeyEvent e) {
+            int rows = canvas.getVisibleRows();
+            switch (e.getKeyCode()) {
+                case KeyEvent.VK_UP:
+                    moveCaret(caretLine - 1);
+                    break;
+                case KeyEvent.VK_DOWN:
+                    moveCaret(caretLine + 1);
+                    break;
+                case KeyEvent.VK_PAGE_UP:
+                    moveCaret(caretLine - rows);
+                    break;
+                case KeyEvent.VK_PAGE_DOWN:
+                    moveCaret(caretLine + rows);
+                    break;
+                case KeyEvent.VK_HOME:
+                    if (e.isControlDown()) {
+                        moveCaret(0);
+                    }
+                    horizontalBar.setValue(0);
+                    break;
+                case KeyEvent.VK_END:
+                    if (e.isControlDown()) {
+                        moveCaret(lineIndex.getLineCount() - 1);
+                    }
+                    break;
+                case KeyEvent.VK_LEFT:
+                    horizontalBar.setValue(horizontalBar.getValue() - 1);
+                    break;
+                case KeyEvent.VK_RIGHT:
+                    horizontalBar.setValue(horizontalBar.getValue() + 1);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
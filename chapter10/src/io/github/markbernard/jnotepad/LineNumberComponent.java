@@ -5,6 +5,7 @@ package io.github.markbernard.jnotepad;
 
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Point;
@@ -14,8 +15,15 @@ import javax.swing.JComponent;
 import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextPane;
+import javax.swing.text.BadLocationException;
+
+import io.github.markbernard.jnotepad.document.LineIndex;
 
 /**
+ * Gutter showing the line numbers of the visible part of the document.
+ * Only the lines in the viewport are visited when painting and the width
+ * only changes when the number of digits in the line count changes.
+ * 
  * @author Mark Bernard
  *
  */
@@ -24,6 +32,11 @@ public class LineNumberComponent extends JComponent {
     private JTextPane document;
     private JScrollPane pane;
     private TextDocument textDocument;
+    private Font metricsFont;
+    private int digitWidth;
+    private int digits;
+    private char[] labelBuffer = new char[10];
+    private Point viewPoint = new Point();
 
     /**
      * @param textDocument 
@@ -35,18 +48,25 @@ public class LineNumberComponent extends JComponent {
         this.document = textDocument.getTextArea();
         this.pane = pane;
         setFont(document.getFont());
+        digits = 1;
         scrollbar.addAdjustmentListener((event) -> repaint());
     }
 
-    public Dimension getPreferredSize() {
-        FontMetrics fm = document.getFontMetrics(document.getFont());
-        int lines = document.getText().split("\\r\\n").length;
-        if (lines == 0) {
-            lines = 1;
+    /**
+     * Called when the document changes. The gutter is only resized 
+     * when the number of digits needed for the line count changes.
+     */
+    public void updateLineCount() {
+        int lineDigits = countDigits(textDocument.getLineIndex().getLineCount());
+        if (lineDigits != digits) {
+            digits = lineDigits;
+            revalidate();
         }
-        int digits = ((int)Math.log10(lines)) + 1;
-        
-        return new Dimension(digits * fm.stringWidth("W"), 30);
+        repaint();
+    }
+
+    public Dimension getPreferredSize() {
+        return new Dimension(digits * getDigitWidth(), 30);
     }
     
     protected void paintComponent(Graphics g) {
@@ -56,28 +76,59 @@ public class LineNumberComponent extends JComponent {
         g.setColor(Color.BLACK);
         int colWidth = getWidth();
         Rectangle viewRect = pane.getViewport().getViewRect();
-        Point currentPoint = viewRect.getLocation();
-        Dimension size = viewRect.getSize();
         FontMetrics fm = document.getFontMetrics(document.getFont());
-        int topOffset = fm.getAscent() + fm.getLeading();
-        int lineHeight = fm.getHeight();
-        int physicalRasterLine = 0;
-        int lastLineNumber = 0;
-        int yOffset = (currentPoint.y % lineHeight);
-        currentPoint.y += 3;
-        while (physicalRasterLine < size.height) {
-            try {
-                int lineNumber = textDocument.calculatePosition(document.viewToModel(currentPoint)).x;
-                if (lastLineNumber != lineNumber) {
-                    lastLineNumber = lineNumber;
-                    String label = String.valueOf(lineNumber);
-                    int xPosition = colWidth - (fm.stringWidth(label));
-                    g.drawString(label, xPosition, topOffset + physicalRasterLine - yOffset);
+        g.setFont(document.getFont());
+        LineIndex lineIndex = textDocument.getLineIndex();
+        viewPoint.setLocation(0, viewRect.y);
+        int firstLine = lineIndex.getLineOfOffset(document.viewToModel(viewPoint));
+        viewPoint.setLocation(0, viewRect.y + viewRect.height);
+        int lastLine = lineIndex.getLineOfOffset(document.viewToModel(viewPoint));
+        try {
+            for (int line=firstLine;line<=lastLine;line++) {
+                Rectangle lineRect = document.modelToView(lineIndex.getLineStart(line));
+                if (lineRect == null) {
+                    break;
                 }
-            } catch (Exception e) {}
-            physicalRasterLine += lineHeight;
-            currentPoint.y += lineHeight;
+                int length = formatLineNumber(line + 1);
+                int start = labelBuffer.length - length;
+                int xPosition = colWidth - fm.charsWidth(labelBuffer, start, length);
+                int yPosition = lineRect.y - viewRect.y + lineRect.height - fm.getDescent();
+                g.drawChars(labelBuffer, start, length, xPosition, yPosition);
+            }
+        } catch (BadLocationException e) {
+            //the document changed while painting, the next repaint will be correct.
         }
         g.setColor(currentColor);
     }
+
+    private int getDigitWidth() {
+        Font font = document.getFont();
+        if (font != metricsFont) {
+            metricsFont = font;
+            digitWidth = document.getFontMetrics(font).stringWidth("W");
+        }
+        
+        return digitWidth;
+    }
+
+    private int formatLineNumber(int lineNumber) {
+        int position = labelBuffer.length;
+        int value = lineNumber;
+        do {
+            labelBuffer[--position] = (char)('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+        
+        return labelBuffer.length - position;
+    }
+
+    private static int countDigits(int value) {
+        int result = 1;
+        while (value >= 10) {
+            value /= 10;
+            result++;
+        }
+        
+        return result;
+    }
 }
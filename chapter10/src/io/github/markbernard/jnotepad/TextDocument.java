@@ -32,30 +32,34 @@ import java.awt.event.ComponentListener;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
-import java.io.Reader;
 import java.io.StringReader;
-import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import javax.swing.InputMap;
 import javax.swing.JCheckBoxMenuItem;
@@ -72,19 +76,37 @@ import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
-import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.DefaultHighlighter;
 import javax.swing.text.Document;
+import javax.swing.text.DocumentFilter;
 import javax.swing.text.Style;
 import javax.swing.text.StyleConstants;
+import javax.swing.text.StyleContext;
 import javax.swing.undo.UndoManager;
 
-import org.apache.tika.parser.txt.CharsetDetector;
-import org.apache.tika.parser.txt.CharsetMatch;
-
 import io.github.markbernard.jnotepad.dialog.EncodingDialog;
+import io.github.markbernard.jnotepad.dialog.UnmappableDialog;
+import io.github.markbernard.jnotepad.document.BulkStyledDocument;
+import io.github.markbernard.jnotepad.document.Compression;
+import io.github.markbernard.jnotepad.document.DocumentLoader;
+import io.github.markbernard.jnotepad.document.DocumentSaver;
+import io.github.markbernard.jnotepad.document.EditJournal;
+import io.github.markbernard.jnotepad.document.EncodabilityScanner;
+import io.github.markbernard.jnotepad.document.EncodingDetector;
+import io.github.markbernard.jnotepad.document.FileFollower;
+import io.github.markbernard.jnotepad.document.FileWatcher;
+import io.github.markbernard.jnotepad.document.LineDiff;
+import io.github.markbernard.jnotepad.document.LineEndings;
+import io.github.markbernard.jnotepad.document.LineIndex;
+import io.github.markbernard.jnotepad.document.LocalHistory;
+import io.github.markbernard.jnotepad.document.MappedFile;
+import io.github.markbernard.jnotepad.document.PieceTableContent;
+import io.github.markbernard.jnotepad.document.StyledBatch;
 import io.github.markbernard.jnotepad.dialog.GoToDialog;
 import io.github.markbernard.jnotepad.parser.JavaDocumentParser;
+import io.github.markbernard.jnotepad.parser.JavaHighlighter;
 
 /**
  * @author Mark Bernard
@@ -93,39 +115,43 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
     private static final long serialVersionUID = -6937922244390572212L;
     private static final DateFormat DATE_FORMAT = new SimpleDateFormat("hh:mm aa yyyy-MM-dd");
     private static final String FILE_SEPARATOR = System.getProperty("file.separator");
-    private static final String[] NEW_LINE_CHAR = {"\n", "\r\n"};
-    private static final String[] REGEX_NEW_LINE_CHAR = {"\\n", "\\r\\n"};
-    private static Set<String> supportedEncodings = new HashSet<>();
-    private static Map<String ,Set<String>> encodingAliasMap = new HashMap<>();
-    
-    static {
-        supportedEncodings.add(StandardCharsets.ISO_8859_1.name());
-        supportedEncodings.addAll(StandardCharsets.ISO_8859_1.aliases());
-        supportedEncodings.add(StandardCharsets.US_ASCII.name());
-        supportedEncodings.addAll(StandardCharsets.US_ASCII.aliases());
-        supportedEncodings.add(StandardCharsets.UTF_16.name());
-        supportedEncodings.addAll(StandardCharsets.UTF_16.aliases());
-        supportedEncodings.add(StandardCharsets.UTF_16BE.name());
-        supportedEncodings.addAll(StandardCharsets.UTF_16BE.aliases());
-        supportedEncodings.add(StandardCharsets.UTF_16LE.name());
-        supportedEncodings.addAll(StandardCharsets.UTF_16LE.aliases());
-        supportedEncodings.add(StandardCharsets.UTF_8.name());
-        supportedEncodings.addAll(StandardCharsets.UTF_8.aliases());
-
-        encodingAliasMap.put(StandardCharsets.ISO_8859_1.name(), StandardCharsets.ISO_8859_1.aliases());
-        encodingAliasMap.put(StandardCharsets.US_ASCII.name(), StandardCharsets.US_ASCII.aliases());
-        encodingAliasMap.put(StandardCharsets.UTF_16.name(), StandardCharsets.UTF_16.aliases());
-        encodingAliasMap.put(StandardCharsets.UTF_16BE.name(), StandardCharsets.UTF_16BE.aliases());
-        encodingAliasMap.put(StandardCharsets.UTF_16LE.name(), StandardCharsets.UTF_16LE.aliases());
-        encodingAliasMap.put(StandardCharsets.UTF_8.name(), StandardCharsets.UTF_8.aliases());
+    private static final long LARGE_FILE_THRESHOLD = 64L * 1024 * 1024;
+    private static final int LOAD_CHUNK_SIZE = 1 << 20;
+    private static final int FIRST_LOAD_CHUNK_SIZE = 16384;
+    private static final int ENCODING_PREFIX_SIZE = 65536;
+    // characters kept while following a file, older lines are removed from the start
+    private static final int MAX_FOLLOW_LENGTH = 8 << 20;
+    private static final int MAX_UNMAPPABLE_MARKERS = 100;
+    private static final DefaultHighlighter.DefaultHighlightPainter UNMAPPABLE_PAINTER = 
+            new DefaultHighlighter.DefaultHighlightPainter(new Color(255, 190, 190));
+    // opening many files at once uses every core without starting a thread per file
+    private static final ExecutorService LOAD_EXECUTOR = createLoadExecutor();
+    // a single thread keeps saves of the same file in the order they were requested
+    private static final ExecutorService SAVE_EXECUTOR = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "Save");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static ExecutorService createLoadExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), (runnable) -> {
+            Thread thread = new Thread(runnable, "Load " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
     
     private JNotepad jNotepad;
     private JTextPane textPane;
     private JScrollPane textScroll;
     private LineNumberComponent lineNumberComponent;
-    private DefaultStyledDocument document;
-    private int newLineTypeUsed = 0;
+    private LargeFileViewer largeFileViewer;
+    private HexFileViewer hexFileViewer;
+    private BulkStyledDocument document;
+    private PieceTableContent content;
+    private LineIndex lineIndex;
+    private InsertDocumentFilter insertDocumentFilter;
+    private JavaHighlighter highlighter;
 
     private String newFileName = "";
     private String fileName;
@@ -135,6 +161,28 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
     private UndoManager undoManager;
     private String encoding;
     private boolean updateFont;
+    private volatile boolean loading;
+    private volatile boolean loadCancelled;
+    private volatile int loadProgress;
+    private volatile DocumentLoader loader;
+    private int pendingSaves;
+    private File sourceFile;
+    private long sourceModified;
+    private long sourceLength;
+    private String sourceEncoding;
+    private boolean byteOrderMark;
+    private EditJournal journal;
+    private boolean journalFailed;
+    private LocalHistory.Version baseVersion;
+    private boolean externalChangePending;
+    private boolean reloading;
+    private FileFollower follower;
+    private boolean followPending;
+    private boolean followRequested;
+    private boolean trimmed;
+    private boolean incomplete;
+    private final List<Object> unmappableMarkers = new ArrayList<>();
+    private final Runnable fileChangeListener = () -> SwingUtilities.invokeLater(this::checkExternalChange);
 
     /**
      * @param jNotepad 
@@ -157,7 +205,48 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
         this.jNotepad = jNotepad;
         parseFileName(file.getAbsolutePath().replace("\\", "/"));
         createGui();
-        loadFile(file);
+        if (file.length() > LARGE_FILE_THRESHOLD && !isCompressed(file)) {
+            openLargeFile(file);
+        } else {
+            startLoading(file.getName(), (style) -> loadFile(file, style));
+        }
+    }
+
+    /**
+     * Open an entry of a zip or jar archive. The archive is not written to, 
+     * saving the document asks for a new file.
+     * 
+     * @param jNotepad 
+     * @param archive Full path to the archive
+     * @param entryName Name of the entry in the archive
+     */
+    public TextDocument(JNotepad jNotepad, File archive, String entryName) {
+        this.jNotepad = jNotepad;
+        parseFileName(archive.getAbsolutePath().replace("\\", "/"));
+        newFileName = fileName + "!/" + entryName;
+        fileName = newFileName;
+        createGui();
+        startLoading(entryName, (style) -> loadEntry(archive, entryName, style));
+    }
+
+    /**
+     * @param jNotepad 
+     * @param documentNumber Number to place beside new in the new file name if the document was never saved.
+     * @param recovery Text recovered from the journal of a document that was not closed.
+     */
+    public TextDocument(JNotepad jNotepad, int documentNumber, EditJournal.Recovery recovery) {
+        this.jNotepad = jNotepad;
+        newFileName = "new " + documentNumber;
+        if (recovery.getBase() != null) {
+            parseFileName(recovery.getBase().getAbsolutePath().replace("\\", "/"));
+        } else {
+            fileName = newFileName;
+        }
+        encoding = recovery.getEncoding();
+        createGui();
+        textPane.setFont(ApplicationPreferences.getCurrentFont());
+        restoreText(recovery.getText());
+        recovery.discard();
     }
     
     private void createGui() {
@@ -178,15 +267,20 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
         lineNumberComponent = new LineNumberComponent(this, textScroll.getVerticalScrollBar(), textScroll);
         textScroll.setRowHeaderView(lineNumberComponent);
         textPane.addCaretListener((event) -> updateStatusBar(event.getDot()));
-        updateStatusBar(textPane.getCaretPosition());
-        document = new DefaultStyledDocument();
+        undoManager = new UndoManager();
+        lineIndex = new LineIndex();
+        insertDocumentFilter = new InsertDocumentFilter(this);
+        content = new PieceTableContent();
+        document = new BulkStyledDocument(content, new StyleContext());
+        textPane.setDocument(document);
         document.addDocumentListener(this);
-        document.setDocumentFilter(new InsertDocumentFilter(this));
+        document.setDocumentFilter(insertDocumentFilter);
         document.addUndoableEditListener(undoManager);
-        textPane.setDocument(document);
+        // added after the text pane so the index is updated before the caret reports its new position
+        document.addDocumentListener(lineIndex);
         textPane.addKeyListener(jNotepad);
         textPane.addKeyListener(this);
-        undoManager = new UndoManager();
+        updateStatusBar(textPane.getCaretPosition());
         removeKeyStrokes(textPane);
     }
     
@@ -194,7 +288,55 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
      * @return The title for this document.
      */
     public String getTitle() {
-        return (dirty ? "*" : "") + fileName;
+        return (dirty ? "*" : "") + fileName + (pendingSaves > 0 ? " (saving)" : "");
+    }
+
+    /**
+     * @return The full text of the document.
+     */
+    public String getText() {
+        String result = "";
+        try {
+            result = document.getText(0, document.getLength());
+        } catch (BadLocationException e) {
+            //should not occur as the range is the whole document
+            e.printStackTrace();
+        }
+        
+        return result;
+    }
+
+    /**
+     * Change the text to match the provided text. Only the lines that differ are
+     * replaced so the caret and the rest of the text stay where they are and the
+     * change can be undone. The text is placed as it is, overwrite mode does not 
+     * apply to it.
+     * 
+     * @param text
+     */
+    public void replaceText(String text) {
+        String current = getText();
+        int[] currentStarts = LineDiff.lineStarts(current);
+        int[] textStarts = LineDiff.lineStarts(text);
+        List<LineDiff.Change> changes = LineDiff.diff(current, text);
+        // the insert filter would remove the text after each change in overwrite mode
+        DocumentFilter filter = document.getDocumentFilter();
+        document.setDocumentFilter(null);
+        try {
+            // applied from the end so the offsets of the earlier changes stay valid
+            for (int i=changes.size()-1;i>=0;i--) {
+                LineDiff.Change change = changes.get(i);
+                int start = currentStarts[change.getOriginalStart()];
+                int end = currentStarts[change.getOriginalEnd()];
+                document.replace(start, end - start, 
+                        text.substring(textStarts[change.getRevisedStart()], textStarts[change.getRevisedEnd()]), null);
+            }
+        } catch (BadLocationException e) {
+            //should not occur as the offsets come from the current text
+            e.printStackTrace();
+        } finally {
+            document.setDocumentFilter(filter);
+        }
     }
 
     /**
@@ -226,8 +368,11 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
      * @param clipboard
      */
     public void performPaste(DataFlavor flavor, Clipboard clipboard) {
+        if (!textPane.isEditable()) {
+            return;
+        }
         try {
-            String data = (String)clipboard.getData(flavor);
+            String data = LineEndings.normalize((String)clipboard.getData(flavor));
             int start = textPane.getSelectionStart();
             int end = textPane.getSelectionEnd();
             int length = end - start;
@@ -274,6 +419,10 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
      * @param findDownDirection
      */
     public void findNext(String findTerm, boolean matchCase, boolean findDownDirection) {
+        if (hexFileViewer != null) {
+            hexFileViewer.findNext(findTerm, matchCase, findDownDirection);
+            return;
+        }
         try {
             String localFindTerm = findTerm;
             if (!matchCase) {
@@ -349,30 +498,21 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
      * @param parentFrame 
      */
     public void goTo(JFrame parentFrame) {
-        try {
-            GoToDialog goToDialog = new GoToDialog(parentFrame, jNotepad);
-            if (goToDialog.showDialog()) {
-                int lineNumber = goToDialog.getLineNumber();
-                
-                if (lineNumber == 1) {
-                    textPane.setCaretPosition(0);
-                } else if (lineNumber >= 0) {
-                    String[] lines = document.getText(0, document.getLength()).split(REGEX_NEW_LINE_CHAR[newLineTypeUsed]);
-                    int pos = 0;
-                    if (lineNumber <= lines.length) {
-                        for (int i=1;i<lineNumber;i++) {
-                            pos += lines[i - 1].length();
-                            pos++;
-                        }
-                        textPane.setCaretPosition(pos);
-                    }
-                }
+        if (hexFileViewer != null) {
+            hexFileViewer.goToOffset(parentFrame);
+            return;
+        }
+        GoToDialog goToDialog = new GoToDialog(parentFrame, jNotepad);
+        if (goToDialog.showDialog()) {
+            int lineNumber = goToDialog.getLineNumber();
+            
+            if (largeFileViewer != null) {
+                largeFileViewer.goToLine(lineNumber);
+            } else if (lineNumber >= 1 && lineNumber <= lineIndex.getLineCount()) {
+                textPane.setCaretPosition(lineIndex.getLineStart(lineNumber - 1));
             }
-            goToDialog.dispose();
-        } catch (BadLocationException e) {
-            //should not happen as length is retreived from the document.
-            e.printStackTrace();
         }
+        goToDialog.dispose();
     }
 
     /**
@@ -380,7 +520,7 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
      */
     public void selectAll() {
         textPane.setSelectionStart(0);        
-        textPane.setSelectionEnd(textPane.getText().length());
+        textPane.setSelectionEnd(document.getLength());
     }
 
     /**
@@ -467,59 +607,235 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
      */
     public void setEncoding(String encoding) {
         this.encoding = encoding;
+        clearUnmappableMarkers();
+    }
+
+    /**
+     * @return true if the document cannot be changed.
+     */
+    public boolean isReadOnly() {
+        return readOnly || loading || follower != null;
+    }
+
+    /**
+     * @return true while the file is still being read in the background.
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * @return How much of the file has been loaded, from 0 to 100.
+     */
+    public int getLoadProgress() {
+        return loadProgress;
     }
 
     /**
      * Operations to update the GUI when a document tab is selected.
      */
     public void shown() {
-        textPane.requestFocusInWindow();
-        updateStatusBar(textPane.getCaretPosition());
+        if (largeFileViewer != null) {
+            largeFileViewer.shown();
+        } else if (hexFileViewer != null) {
+            hexFileViewer.shown();
+        } else {
+            textPane.requestFocusInWindow();
+            updateStatusBar(textPane.getCaretPosition());
+        }
         if (!fileName.equals(newFileName)) {
             ApplicationPreferences.setCurrentFileName(fileName);
             ApplicationPreferences.setCurrentFilePath(filePath);
         }
+        jNotepad.updateLoadProgress(this);
+        jNotepad.updateFollow(this);
     }
     
-    private void updateStatusBar(int position) {
+    /**
+     * Operations to release resources when the document tab is closed.
+     */
+    public void closed() {
+        if (largeFileViewer != null) {
+            largeFileViewer.close();
+        }
+        if (hexFileViewer != null) {
+            hexFileViewer.close();
+        }
+        cancelLoading();
+        if (highlighter != null) {
+            highlighter.uninstall();
+        }
+        setFollowing(false);
+        deleteJournal();
+        if (sourceFile != null) {
+            FileWatcher.unwatch(sourceFile, fileChangeListener);
+        }
+    }
+
+    /**
+     * @return true if text written to the end of the file is added to the document.
+     */
+    public boolean isFollowing() {
+        return follower != null;
+    }
+
+    /**
+     * Start or stop adding the text written to the end of the file to the document.
+     * While following, the document is read only and changes are not recorded for
+     * undo. Only a document holding the saved content of a file can follow it.
+     * 
+     * @param follow
+     */
+    public void setFollowing(boolean follow) {
+        if (follow == isFollowing()) {
+            jNotepad.updateFollow(this);
+        } else if (follow) {
+            if (sourceFile == null || loading || largeFileViewer != null || dirty) {
+                JOptionPane.showMessageDialog(this, "Only a saved document without unsaved changes can follow its file.", 
+                        "Follow", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                try {
+                    if (Compression.detect(sourceFile) != Compression.NONE) {
+                        // new bytes at the end of a compressed file cannot be decoded on their own
+                        JOptionPane.showMessageDialog(this, "A compressed file cannot be followed.", 
+                                "Follow", JOptionPane.INFORMATION_MESSAGE);
+                    } else {
+                        // the text already holds the file unless it has changed since it was read
+                        long position = sourceLength > 0 && sourceFile.lastModified() == sourceModified && 
+                                sourceFile.length() == sourceLength ? sourceLength : 0;
+                        follower = new FileFollower(sourceFile, Charset.isSupported(sourceEncoding) ? 
+                                Charset.forName(sourceEncoding) : StandardCharsets.UTF_8, position);
+                        textPane.setEditable(false);
+                        followFile(position == 0);
+                    }
+                } catch (IOException e) {
+                    JOptionPane.showMessageDialog(this, "Unable to follow the file: " + sourceFile, 
+                            "Follow", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        } else {
+            try {
+                follower.close();
+            } catch (IOException e) {
+                //nothing more is read from the file either way
+            }
+            follower = null;
+            textPane.setEditable(true);
+        }
+        jNotepad.updateLoadProgress(this);
+        jNotepad.updateFollow(this);
+    }
+
+    /**
+     * Read what was written to the file on one of the loading threads. Only one 
+     * read is done at a time, a change reported during a read starts another one.
+     * 
+     * @param first true for a first read from the start of the file, which returns the whole file.
+     */
+    private void followFile(boolean first) {
+        if (followPending) {
+            followRequested = true;
+            return;
+        }
+        followPending = true;
+        final FileFollower currentFollower = follower;
+        LOAD_EXECUTOR.execute(() -> {
+            String text = null;
+            boolean restarted = false;
+            try {
+                text = currentFollower.read();
+                restarted = currentFollower.isRestarted();
+            } catch (IOException e) {
+                //following was stopped, or the file cannot be read until it is written again
+            }
+            final String finalText = text;
+            final boolean finalRestarted = restarted;
+            SwingUtilities.invokeLater(() -> {
+                followPending = false;
+                if (follower == currentFollower) {
+                    if (finalText != null) {
+                        appendFollowed(finalText, first, finalRestarted);
+                    }
+                    if (followRequested) {
+                        followRequested = false;
+                        followFile(false);
+                    }
+                }
+            });
+        });
+    }
+
+    /**
+     * Add the text read from the file. A first read from the start of the file 
+     * holds the whole file, which only needs the lines written since the file 
+     * was loaded to be added.
+     */
+    private void appendFollowed(String text, boolean first, boolean restarted) {
+        boolean atEnd = textPane.getCaretPosition() == document.getLength();
+        if (first) {
+            reloadText(text);
+            undoManager.discardAllEdits();
+            dirty = false;
+            jNotepad.setTitle(this);
+        }
+        beginBulkEdit();
         try {
-            //solution for row and column from http://java-sl.com/tip_row_column.html
-            Point caratPosition = calculatePosition(position);
-            jNotepad.updateStatusBar(String.format("Ln %d, Col %d", 
-                    caratPosition.x, caratPosition.y));
+            if (!first && !text.isEmpty()) {
+                if (restarted && document.getLength() > 0 && !document.getText(document.getLength() - 1, 1).equals("\n")) {
+                    // the file was truncated or rotated, its new content starts on a new line
+                    text = "\n" + text;
+                }
+                document.insertString(document.getLength(), text, document.getStyle("plain text"));
+            }
+            int length = document.getLength();
+            if (length > MAX_FOLLOW_LENGTH) {
+                // removed well below the limit so old lines are not removed on every write
+                int line = lineIndex.getLineOfOffset(length - MAX_FOLLOW_LENGTH * 3 / 4);
+                document.remove(0, lineIndex.getLineStart(Math.min(line + 1, lineIndex.getLineCount() - 1)));
+                trimmed = true;
+            }
         } catch (BadLocationException e) {
-            //not critical if the position in the
-            //status bar does not get updated.
+            //should not occur as only the ends of the document are changed
             e.printStackTrace();
         }
+        endBulkEdit();
+        if (atEnd) {
+            textPane.setCaretPosition(document.getLength());
+        }
+    }
+
+    /**
+     * Stop reading the file if it is still being loaded.
+     */
+    public void cancelLoading() {
+        if (loading) {
+            loadCancelled = true;
+            // closing the channel makes the loading thread's next read fail right away
+            ResourceCleanup.close(loader);
+        }
+    }
+    
+    private void updateStatusBar(int position) {
+        Point caratPosition = calculatePosition(position);
+        jNotepad.updateStatusBar(String.format("Ln %d, Col %d", 
+                caratPosition.x, caratPosition.y));
     }
     
     /**
      * @param position
      * @return Point representing the text row and column for the provided position.
-     * @throws BadLocationException
-     */
-    public Point calculatePosition(int position) throws BadLocationException {
-        int line = 0;
-        int column = 1;
-
-        if (document != null) {
-            String[] lines = document.getText(0, document.getLength()).split(REGEX_NEW_LINE_CHAR[newLineTypeUsed]);
-            int pos = 0;
-            while (pos < position && line < lines.length) {
-                int size = lines[line].length() + NEW_LINE_CHAR[newLineTypeUsed].length();
-                if (pos + size > position) {
-                    column = (position - pos) + 1;
-                }
-                pos += size;
-                line++;
-            }
-        }
-        if (column == 1) {
-            line++;
-        }
+     */
+    public Point calculatePosition(int position) {
+        int line = lineIndex.getLineOfOffset(position);
         
-        return new Point(line, column);
+        return new Point(line + 1, position - lineIndex.getLineStart(line) + 1);
+    }
+
+    /**
+     * @return The index of line start offsets for this document.
+     */
+    public LineIndex getLineIndex() {
+        return lineIndex;
     }
 
     /**
@@ -533,8 +849,8 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
             jNotepad.setInsertMode(true);
             try {
                 int trimLength = length;
-                if (position + trimLength > textPane.getText().length()) {
-                    trimLength = textPane.getText().length() - position;
+                if (position + trimLength > document.getLength()) {
+                    trimLength = document.getLength() - position;
                 }
                 if (trimLength > 0) {
                     document.remove(position, trimLength);
@@ -546,85 +862,431 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
         }
     }
 
-    private void loadFile(File path) {
-        Reader in = null;
-        InputStream inStream = null;
+    /**
+     * Detach the filter, listeners and undo recording from the document so a large
+     * amount of text can be placed in it without any per insert processing. Every 
+     * call must be followed by a call to endBulkEdit. The line index stays attached
+     * since it only scans the inserted text.
+     */
+    private void beginBulkEdit() {
+        document.removeUndoableEditListener(undoManager);
+        document.setDocumentFilter(null);
+        document.removeDocumentListener(this);
+    }
+
+    /**
+     * Reattach everything removed by beginBulkEdit and report the whole change at once.
+     */
+    private void endBulkEdit() {
+        document.addDocumentListener(this);
+        document.setDocumentFilter(insertDocumentFilter);
+        document.addUndoableEditListener(undoManager);
+        lineNumberComponent.updateLineCount();
+        repaint();
+    }
+
+    /**
+     * Show the tab right away and read the file on one of the loading threads. The text
+     * is added to the document a chunk at a time, starting with a small one so the
+     * first screen appears quickly. The document is read only until the whole file
+     * has been read. A Java file is read as plain text and styled by the 
+     * highlighter as it is shown.
+     * 
+     * @param name The name of the file being loaded.
+     * @param loadTask Reads the text on the loading thread.
+     */
+    private void startLoading(String name, Consumer<AttributeSet> loadTask) {
+        loading = true;
+        textPane.setEditable(false);
+        final AttributeSet style;
+        String lowerName = name.toLowerCase();
+        if (lowerName.endsWith(".gz")) {
+            lowerName = lowerName.substring(0, lowerName.length() - 3);
+        }
+        if (lowerName.endsWith(".java")) {
+            JavaDocumentParser javaDocumentParser = new JavaDocumentParser();
+            javaDocumentParser.createStyles(document);
+            style = javaDocumentParser.getDefaultStyle();
+            startHighlighting(javaDocumentParser);
+        } else {
+            style = createPlainTextStyle();
+        }
+        beginBulkEdit();
+        LOAD_EXECUTOR.execute(() -> loadTask.accept(style));
+    }
+
+    private Style createPlainTextStyle() {
+        Font currentFont = ApplicationPreferences.getCurrentFont();
+        Style style = document.addStyle("plain text", null);
+        StyleConstants.setFontFamily(style, currentFont.getFamily());
+        StyleConstants.setFontSize(style, currentFont.getSize());
+        StyleConstants.setBold(style, currentFont.isBold());
+        StyleConstants.setItalic(style, currentFont.isItalic());
+        StyleConstants.setForeground(style, Color.BLACK);
         
+        return style;
+    }
+
+    /**
+     * Place recovered text in the document. The document is left dirty since the
+     * text does not match any file on disk.
+     */
+    private void restoreText(String text) {
+        beginBulkEdit();
         try {
-            inStream = new BufferedInputStream(new FileInputStream(path));
-            CharsetMatch match = new CharsetDetector().setText(inStream).detect();
-            encoding = match.getName();
-            if (encoding.equals("ISO-8859-1")) {
-                encoding = "UTF-8";
-            }
-            if (supportedEncodings.contains(encoding)) {
-                if (!encodingAliasMap.containsKey(encoding)) {
-                    for (String encodingName : encodingAliasMap.keySet()) {
-                        Set<String> alias = encodingAliasMap.get(encodingName);
-                        if (alias.contains(encoding)) {
-                            encoding = encodingName;
-                            break;
-                        }
-                    }
-                }
+            if (fileName.toLowerCase().endsWith(".java")) {
+                JavaDocumentParser javaDocumentParser = new JavaDocumentParser();
+                javaDocumentParser.createStyles(document);
+                StyledBatch batch = new StyledBatch();
+                javaDocumentParser.parseStream(new StringReader(text), batch);
+                document.insert(0, batch);
+                startHighlighting(javaDocumentParser);
+            } else {
+                document.insertString(0, text, createPlainTextStyle());
             }
-            in = match.getReader();
-            StringBuilder content = new StringBuilder();
-            String line = null;
-            BufferedReader reader = new BufferedReader(in);
-            while ((line = reader.readLine()) != null) {
-                content.append(line + NEW_LINE_CHAR[newLineTypeUsed]);
+        } catch (IOException | BadLocationException e) {
+            //should not occur when reading from memory into an empty document
+            e.printStackTrace();
+        }
+        endBulkEdit();
+        textPane.setCaretPosition(0);
+        dirty = true;
+        journalWholeText();
+    }
+
+    /**
+     * Runs on the loading thread. All changes to the document are passed to the 
+     * event dispatch thread.
+     */
+    private void loadFile(File path, AttributeSet style) {
+        if (loadCancelled) {
+            // the tab was closed while the file was waiting for a free loading thread
+            return;
+        }
+        boolean fileReadOnly = false;
+        long loadedModified = 0;
+        boolean failed = false;
+        
+        try {
+            if (EncodingDetector.isBinary(path)) {
+                SwingUtilities.invokeLater(() -> {
+                    finishLoading(true, path, 0, false);
+                    openHexFile(path);
+                });
+                return;
             }
-            in.close();
-            
-            if (path.getAbsolutePath().toLowerCase().endsWith(".java")) {
-                reader = new BufferedReader(new StringReader(content.toString()));
-                JavaDocumentParser javaDocumentParser = new JavaDocumentParser();
-                javaDocumentParser.parseStream(document, reader);
+            long modified = path.lastModified();
+            String detectedEncoding = normalizeEncoding(EncodingDetector.detect(path));
+            SwingUtilities.invokeLater(() -> encoding = detectedEncoding);
+            loader = new DocumentLoader(path, Charset.isSupported(detectedEncoding) ? 
+                    Charset.forName(detectedEncoding) : StandardCharsets.UTF_8);
+            if (loadCancelled) {
+                return;
+            }
+            // the progress of a compressed file is measured against the compressed bytes read
+            readText(style, Math.max(1, path.length()));
+            fileReadOnly = !path.canWrite() || !canLock(path);
+            loadedModified = modified;
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            failed = true;
+            showLoadError("Unable to find the file: " + path);
+        } catch (IOException e) {
+            failed = true;
+            showLoadError("Unable to load the file: " + path);
+        } finally {
+            ResourceCleanup.close(loader);
+        }
+        
+        boolean finalReadOnly = fileReadOnly;
+        long finalModified = loadedModified;
+        boolean finalFailed = failed;
+        SwingUtilities.invokeLater(() -> finishLoading(finalReadOnly, path, finalModified, finalFailed));
+    }
+
+    /**
+     * Runs on the loading thread. The entry is decompressed as it is read, 
+     * nothing is extracted to disk.
+     */
+    private void loadEntry(File archive, String entryName, AttributeSet style) {
+        if (loadCancelled) {
+            return;
+        }
+        ZipFile zipFile = null;
+        boolean failed = false;
+        try {
+            zipFile = new ZipFile(archive);
+            ZipEntry entry = zipFile.getEntry(entryName);
+            if (entry == null) {
+                throw new FileNotFoundException(entryName);
+            }
+            // the start of the entry is decompressed twice, once to detect the encoding
+            byte[] prefix = new byte[ENCODING_PREFIX_SIZE];
+            int length = 0;
+            InputStream in = zipFile.getInputStream(entry);
+            try {
+                int read = 0;
+                while (length < prefix.length && (read = in.read(prefix, length, prefix.length - length)) > -1) {
+                    length += read;
+                }
+            } finally {
+                ResourceCleanup.close(in);
+            }
+            if (EncodingDetector.isBinary(prefix, length)) {
+                // an entry cannot be memory mapped for the hex view
+                failed = true;
+                showLoadError("Binary entries cannot be opened: " + entryName);
             } else {
-                Font currentFont = ApplicationPreferences.getCurrentFont();
-                Style style = document.addStyle("plain text", null);
-                StyleConstants.setFontFamily(style, currentFont.getFamily());
-                StyleConstants.setFontSize(style, currentFont.getSize());
-                StyleConstants.setBold(style, currentFont.isBold());
-                StyleConstants.setItalic(style, currentFont.isItalic());
-                StyleConstants.setForeground(style, Color.BLACK);
+                String detectedEncoding = normalizeEncoding(EncodingDetector.detect(prefix, length, length < prefix.length));
+                SwingUtilities.invokeLater(() -> encoding = detectedEncoding);
+                loader = new DocumentLoader(zipFile.getInputStream(entry), Charset.isSupported(detectedEncoding) ? 
+                        Charset.forName(detectedEncoding) : StandardCharsets.UTF_8);
+                if (!loadCancelled) {
+                    readText(style, Math.max(1, entry.getSize()));
+                }
+            }
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            failed = true;
+            showLoadError("Unable to find " + entryName + " in " + archive);
+        } catch (IOException e) {
+            failed = true;
+            showLoadError("Unable to load " + entryName + " from " + archive);
+        } finally {
+            ResourceCleanup.close(loader);
+            if (zipFile != null) {
                 try {
-                    document.insertString(0, content.toString(), style);
-                } catch (BadLocationException e) {
-                    //should not occur as position 0 always exists.
-                    e.printStackTrace();
+                    zipFile.close();
+                } catch (IOException e) {
+                    //nothing was written so there is nothing to lose
                 }
             }
-            undoManager.discardAllEdits();
-            dirty = false;
-            readOnly = !path.canWrite();
-            if (!readOnly) {
-                RandomAccessFile rout = null;
-                FileLock lock = null;
+        }
+        
+        boolean finalFailed = failed;
+        SwingUtilities.invokeLater(() -> finishLoading(false, null, 0, finalFailed));
+    }
+
+    /**
+     * Runs on the loading thread. Moves the text from the loader into the document.
+     */
+    private void readText(AttributeSet style, long fileLength) throws IOException {
+        char[] buffer = new char[LOAD_CHUNK_SIZE];
+        int chunkSize = FIRST_LOAD_CHUNK_SIZE;
+        int read = -1;
+        while ((read = loader.read(buffer, 0, chunkSize)) > -1) {
+            String text = new String(buffer, 0, read);
+            applyLoadedText(() -> {
                 try {
-                    rout = new RandomAccessFile(path, "rw");
-                    FileChannel channel = rout.getChannel();
-                    lock = channel.tryLock();
-                } catch (Exception e) {
-                    readOnly = true;
-                } finally {
-                    if (lock != null) {
-                        lock.release();
+                    document.insertString(document.getLength(), text, style);
+                } catch (BadLocationException e) {
+                    //should not occur as the end of the document always exists.
+                    e.printStackTrace();
+                }
+            }, fileLength);
+            chunkSize = buffer.length;
+        }
+    }
+
+    private boolean isCompressed(File file) {
+        boolean result = false;
+        try {
+            result = Compression.detect(file) != Compression.NONE;
+        } catch (IOException e) {
+            //the file is opened normally and the error reported then
+        }
+        
+        return result;
+    }
+
+    /**
+     * Called from the loading thread. Waits for the text to be placed in the 
+     * document so the loading thread never gets far ahead of the display.
+     */
+    private void applyLoadedText(Runnable insert, long fileLength) {
+        // the size of an archive entry is only an estimate
+        loadProgress = (int)Math.min(100, loader.getBytesRead() * 100 / fileLength);
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                if (!loadCancelled) {
+                    int length = document.getLength();
+                    insert.run();
+                    if (length == 0) {
+                        // the caret moves along with text inserted at its position
+                        textPane.setCaretPosition(0);
+                    }
+                    if (highlighter != null) {
+                        // styled before the chunk is painted
+                        highlighter.highlightVisible();
                     }
-                    ResourceCleanup.close(rout);
+                    lineNumberComponent.updateLineCount();
+                    jNotepad.updateLoadProgress(this);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (InvocationTargetException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void showLoadError(String message) {
+        if (!loadCancelled) {
+            SwingUtilities.invokeLater(() -> 
+                JOptionPane.showMessageDialog(this, message, "Error loading file", JOptionPane.ERROR_MESSAGE));
+        }
+    }
+
+    /**
+     * @param failed true if the file could not be read to the end. The document 
+     * then only holds part of the file, so it is left read only and can only be 
+     * saved to a new file.
+     */
+    private void finishLoading(boolean fileReadOnly, File path, long modified, boolean failed) {
+        if (loadCancelled) {
+            return;
+        }
+        if (modified != 0) {
+            setSourceFile(path, modified, loader.getFileLength(), encoding);
+        }
+        if (loader != null) {
+            // the text is only ever held with \n, the file's own breaks are restored when saving
+            lineIndex.setLineEndings(loader.getLineEndings());
+            byteOrderMark = loader.hasByteOrderMark();
+        }
+        endBulkEdit();
+        if (highlighter != null) {
+            // lexed on all cores now that the whole text is in the document
+            highlighter.highlightAll();
+        }
+        undoManager.discardAllEdits();
+        dirty = false;
+        readOnly = fileReadOnly || failed;
+        incomplete = failed;
+        loading = false;
+        textPane.setEditable(!failed);
+        jNotepad.updateLoadProgress(this);
+    }
+
+    /**
+     * Style the document as it is shown and keep the styles up to date from now 
+     * on. Any text styled by the parser must already be in the document.
+     */
+    private void startHighlighting(JavaDocumentParser javaDocumentParser) {
+        highlighter = javaDocumentParser.createHighlighter(document, content);
+        highlighter.install(textScroll.getViewport());
+    }
+
+    private boolean canLock(File path) {
+        boolean result = true;
+        RandomAccessFile rout = null;
+        FileLock lock = null;
+        try {
+            rout = new RandomAccessFile(path, "rw");
+            FileChannel channel = rout.getChannel();
+            lock = channel.tryLock();
+        } catch (Exception e) {
+            result = false;
+        } finally {
+            if (lock != null) {
+                try {
+                    lock.release();
+                } catch (IOException e) {
+                    //the channel is closed next which releases the lock anyway
                 }
             }
-        } catch (FileNotFoundException e) {
+            ResourceCleanup.close(rout);
+        }
+        
+        return result;
+    }
+
+    /**
+     * Files above the size threshold are memory mapped and shown read only 
+     * instead of being loaded into the text pane.
+     * 
+     * @param path
+     */
+    private void openLargeFile(File path) {
+        try {
+            if (EncodingDetector.isBinary(path)) {
+                openHexFile(path);
+                return;
+            }
+            encoding = normalizeEncoding(EncodingDetector.detect(path));
+            Charset charset = Charset.isSupported(encoding) ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            if (!Arrays.equals("\n".getBytes(charset), new byte[] {'\n'})) {
+                // lines are found by scanning for the new line byte so only ASCII compatible encodings can be viewed
+                charset = StandardCharsets.UTF_8;
+            }
+            encoding = charset.name();
+            largeFileViewer = new LargeFileViewer(jNotepad, new MappedFile(path), charset);
+            remove(textScroll);
+            add(largeFileViewer, BorderLayout.CENTER);
+            readOnly = true;
+            textPane.setEditable(false);
+        } catch (FileNotFoundException | NoSuchFileException e) {
             JOptionPane.showMessageDialog(this, "Unable to find the file: " + path, "Error loading file", JOptionPane.ERROR_MESSAGE);
         } catch (IOException e) {
             JOptionPane.showMessageDialog(this, "Unable to load the file: " + path, "Error loading file", JOptionPane.ERROR_MESSAGE);
-        } finally {
-            ResourceCleanup.close(in);
-            ResourceCleanup.close(inStream);
         }
     }
 
+    /**
+     * Binary files are shown in a read only hex view instead of being decoded 
+     * into the text pane. A compressed binary file is shown as it is stored.
+     * 
+     * @param path
+     */
+    private void openHexFile(File path) {
+        try {
+            hexFileViewer = new HexFileViewer(jNotepad, new MappedFile(path));
+            remove(textScroll);
+            add(hexFileViewer, BorderLayout.CENTER);
+            revalidate();
+            readOnly = true;
+            textPane.setEditable(false);
+            if (isShowing()) {
+                hexFileViewer.shown();
+            }
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            JOptionPane.showMessageDialog(this, "Unable to find the file: " + path, "Error loading file", JOptionPane.ERROR_MESSAGE);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Unable to load the file: " + path, "Error loading file", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private String normalizeEncoding(String detectedEncoding) {
+        String result = detectedEncoding;
+        if (isSupportedEncoding(result)) {
+            // an alias is shown and saved under the canonical name
+            result = Charset.forName(result).name();
+        }
+        
+        return result;
+    }
+
+    private static boolean isSupportedEncoding(String name) {
+        boolean result = false;
+        try {
+            result = Charset.isSupported(name);
+        } catch (IllegalCharsetNameException e) {
+            //not a name any charset could have
+        }
+        
+        return result;
+    }
+
+    private boolean checkLargeFile() {
+        if (largeFileViewer != null) {
+            JOptionPane.showMessageDialog(this, "Files over " + (LARGE_FILE_THRESHOLD / (1024 * 1024)) + 
+                    " MB are opened read only and cannot be saved.", "JNotepad", JOptionPane.INFORMATION_MESSAGE);
+        } else if (hexFileViewer != null) {
+            JOptionPane.showMessageDialog(this, "Binary files are opened read only and cannot be saved.", 
+                    "JNotepad", JOptionPane.INFORMATION_MESSAGE);
+        }
+        
+        return largeFileViewer == null && hexFileViewer == null;
+    }
+
     private void removeKeyStrokes(JTextPane textArea) {
         InputMap targetMap = null;
         InputMap parentMap = textArea.getInputMap();
@@ -650,10 +1312,11 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
     public boolean save() {
         boolean result = false;
         
-        if (checkEncoding()) {
-            if (fileName.equals(newFileName)) {
+        if (!loading && checkLargeFile() && checkEncoding()) {
+            if (fileName.equals(newFileName) || trimmed || incomplete) {
+                // a document with lines removed while following, or only partly loaded, would lose them from the file
                 result = saveAs();
-            } else {
+            } else if (checkUnmappable(new File(filePath + FILE_SEPARATOR + fileName))) {
                 saveFile();
                 dirty = false;
                 
@@ -671,16 +1334,24 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
      * @return false if the user cancels the file save dialog, true otherwise
      */
     public boolean saveAs() {
-        boolean result = true;
+        boolean result = !loading && checkLargeFile();
         
-        if (checkEncoding()) {
+        if (result && checkEncoding()) {
             String filePath = ApplicationPreferences.getCurrentFilePath();
             JFileChooser fileChooser = new JFileChooser(filePath);
-            if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION && 
+                    checkUnmappable(fileChooser.getSelectedFile())) {
                 File selectedFile = fileChooser.getSelectedFile();
                 parseFileName(selectedFile.getAbsolutePath().replace("\\", "/"));
                 saveFile();
                 dirty = false;
+                trimmed = false;
+                if (incomplete) {
+                    // the new file holds exactly the text that was read
+                    incomplete = false;
+                    readOnly = false;
+                    textPane.setEditable(true);
+                }
             } else {
                 result = false;
             }
@@ -690,7 +1361,8 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
     }
     
     private boolean checkEncoding() {
-        boolean encodingOk = encodingAliasMap.containsKey(encoding);
+        // some charsets can only be read
+        boolean encodingOk = isSupportedEncoding(encoding) && Charset.forName(encoding).canEncode();
 
         if (!encodingOk) {
             if (JOptionPane.showConfirmDialog(this, "<html><p>The current encoding (<b>" + encoding + "</b>) is not supported for saving.</p><p>To continue saving you must select a new encoding.</p><p>Click <b>OK</b> to change encodings.</p><p>Click <b>Cancel</b> to not save the current changes.</p><html>", "Invalid Encoding", JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.OK_OPTION) {
@@ -705,28 +1377,387 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
         return encodingOk;
     }
 
+    /**
+     * Look for characters the encoding cannot write before they are replaced by 
+     * the save. They are highlighted in the document and listed for the user, 
+     * who can still save or cancel to fix them.
+     * 
+     * @param file The file the document will be saved to.
+     * @return true if the save should go ahead.
+     */
+    private boolean checkUnmappable(File file) {
+        clearUnmappableMarkers();
+        if (canCopySource(file)) {
+            // an unchanged document is copied from its file without encoding it again
+            return true;
+        }
+        int[] positions = EncodabilityScanner.findUnmappable(content.createSnapshot(), Charset.forName(encoding), 
+                MAX_UNMAPPABLE_MARKERS + 1);
+        if (positions.length == 0) {
+            return true;
+        }
+        boolean complete = positions.length <= MAX_UNMAPPABLE_MARKERS;
+        int count = Math.min(positions.length, MAX_UNMAPPABLE_MARKERS);
+        String[] descriptions = new String[count];
+        int[] lengths = new int[count];
+        try {
+            for (int i=0;i<count;i++) {
+                String text = document.getText(positions[i], Math.min(2, document.getLength() - positions[i]));
+                int codePoint = text.codePointAt(0);
+                lengths[i] = Character.charCount(codePoint);
+                unmappableMarkers.add(textPane.getHighlighter().addHighlight(positions[i], positions[i] + lengths[i], 
+                        UNMAPPABLE_PAINTER));
+                Point location = calculatePosition(positions[i]);
+                descriptions[i] = String.format("Ln %d, Col %d    U+%04X  %s", location.x, location.y, codePoint, 
+                        Character.isSurrogate((char)codePoint) ? "" : new String(Character.toChars(codePoint)));
+            }
+        } catch (BadLocationException e) {
+            //should not occur as the positions were found in the current text
+            e.printStackTrace();
+        }
+        UnmappableDialog unmappableDialog = new UnmappableDialog(jNotepad.getParentFrame(), encoding, descriptions, complete, 
+                (index) -> {
+                    textPane.setSelectionStart(positions[index]);
+                    textPane.setSelectionEnd(positions[index] + lengths[index]);
+                });
+        
+        return unmappableDialog.showDialog();
+    }
+
+    /**
+     * @param file The file the document will be saved to.
+     * @return true if the document can be saved by copying the bytes of the file it was read from.
+     */
+    private boolean canCopySource(File file) {
+        boolean result = false;
+        if (!dirty && sourceFile != null && encoding.equals(sourceEncoding)) {
+            try {
+                // the bytes are only right when the new name asks for the compression the file already has
+                result = Compression.detect(sourceFile) == (Compression.isGzipName(file) ? Compression.GZIP : Compression.NONE);
+            } catch (IOException e) {
+                //the text is encoded and written instead
+            }
+        }
+        
+        return result;
+    }
+
+    private void clearUnmappableMarkers() {
+        for (Object marker : unmappableMarkers) {
+            textPane.getHighlighter().removeHighlight(marker);
+        }
+        unmappableMarkers.clear();
+    }
+
+    /**
+     * The text is captured on the event dispatch thread and then encoded and written
+     * by the save thread, so a large save does not freeze the editor.
+     */
     private void saveFile() {
+        // the document would follow a file other than the one it is saved to
+        setFollowing(false);
         final JComponent parentComponent = this;
-        final String path = filePath + FILE_SEPARATOR + fileName;
-        SwingUtilities.invokeLater(() -> {
-            Writer out = null;
-            
+        final File file = new File(filePath + FILE_SEPARATOR + fileName);
+        final String saveEncoding = encoding;
+        final PieceTableContent.Snapshot snapshot = content.createSnapshot();
+        final LineEndings lineEndings = lineIndex.getLineEndings().copy();
+        final boolean saveByteOrderMark = byteOrderMark;
+        // an unchanged document is copied byte for byte from the file it was read from
+        final File copySource = canCopySource(file) ? sourceFile : null;
+        final long copyModified = sourceModified;
+        pendingSaves++;
+        SAVE_EXECUTOR.execute(() -> {
+            String error = null;
+            long savedModified = 0;
+            long savedLength = -1;
+            LocalHistory.Version savedVersion = null;
             try {
-                out = new OutputStreamWriter(new FileOutputStream(path), encoding);
-                out.write(document.getText(0, document.getLength()));
-            } catch (FileNotFoundException e) {
-                JOptionPane.showMessageDialog(parentComponent, "Unable to create the file: " + path + "\n" + e.getMessage(), "Error saving file", JOptionPane.ERROR_MESSAGE);
+                if (copySource != null && copySource.lastModified() == copyModified) {
+                    DocumentSaver.copy(copySource, file);
+                } else {
+                    DocumentSaver.save(snapshot, lineEndings, saveByteOrderMark, file, saveEncoding);
+                }
+                savedModified = file.lastModified();
+                if (!Compression.isGzipName(file)) {
+                    savedLength = file.length();
+                }
+                savedVersion = recordHistory(file);
+            } catch (FileNotFoundException | NoSuchFileException | AccessDeniedException e) {
+                error = "Unable to create the file: " + file + "\n" + e.getMessage();
             } catch (IOException e) {
-                JOptionPane.showMessageDialog(parentComponent, "Unable to save the file: " + path, "Error saving file", JOptionPane.ERROR_MESSAGE);
-            } catch (BadLocationException e) {
-                //should not happen as length is retreived from the document.
-                e.printStackTrace();
-            } finally {
-                ResourceCleanup.close(out);
+                error = "Unable to save the file: " + file;
             }
+            final String message = error;
+            final long modified = savedModified;
+            final long length = savedLength;
+            final LocalHistory.Version version = savedVersion;
+            SwingUtilities.invokeLater(() -> {
+                pendingSaves--;
+                if (message != null) {
+                    dirty = true;
+                    JOptionPane.showMessageDialog(parentComponent, message, "Error saving file", JOptionPane.ERROR_MESSAGE);
+                } else {
+                    setSourceFile(file, modified, length, saveEncoding);
+                    baseVersion = version;
+                    deleteJournal();
+                    if (dirty) {
+                        // changed while saving so the journal is no longer based on any file
+                        journalWholeText();
+                    }
+                }
+                jNotepad.setTitle(this);
+            });
         });
     }
 
+    /**
+     * Runs on the save thread. A version that cannot be recorded does not stop the save.
+     */
+    private LocalHistory.Version recordHistory(File file) {
+        LocalHistory.Version result = null;
+        try {
+            result = LocalHistory.record(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        
+        return result;
+    }
+
+    /**
+     * Keep the file the document was read from in the local history so it can be
+     * used to merge the document with changes made by another program. Done when 
+     * the document is first changed since an unchanged document is simply reloaded.
+     */
+    private void recordBaseVersion() {
+        if (sourceFile != null && baseVersion == null) {
+            final File file = sourceFile;
+            final long modified = sourceModified;
+            SAVE_EXECUTOR.execute(() -> {
+                if (file.lastModified() == modified) {
+                    LocalHistory.Version version = recordHistory(file);
+                    SwingUtilities.invokeLater(() -> {
+                        if (file.equals(sourceFile) && modified == sourceModified) {
+                            baseVersion = version;
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * Called when the watcher reports a change to the file. The file is read on 
+     * one of the loading threads, along with the version the document started 
+     * from in case the two need to be merged.
+     */
+    private void checkExternalChange() {
+        if (follower != null) {
+            followFile(false);
+            return;
+        }
+        if (externalChangePending || loading || pendingSaves > 0 || sourceFile == null || largeFileViewer != null) {
+            return;
+        }
+        final File file = sourceFile;
+        final long modified = file.lastModified();
+        if (modified == 0 || modified == sourceModified) {
+            // deleted, or the change was a save made from this document
+            return;
+        }
+        final LocalHistory.Version base = baseVersion;
+        final String baseEncoding = sourceEncoding;
+        externalChangePending = true;
+        LOAD_EXECUTOR.execute(() -> {
+            String text = null;
+            String fileEncoding = null;
+            DocumentLoader fileLoader = null;
+            String baseText = null;
+            try {
+                fileEncoding = normalizeEncoding(EncodingDetector.detect(file));
+                fileLoader = new DocumentLoader(file, Charset.isSupported(fileEncoding) ? 
+                        Charset.forName(fileEncoding) : StandardCharsets.UTF_8);
+                text = readFile(fileLoader);
+                if (base != null) {
+                    baseText = base.readText(baseEncoding);
+                }
+            } catch (IOException e) {
+                //the file may be in the middle of being written, the next change is checked again
+            }
+            final String finalText = text;
+            final String finalEncoding = fileEncoding;
+            final DocumentLoader finalLoader = fileLoader;
+            final String finalBaseText = baseText;
+            SwingUtilities.invokeLater(() -> {
+                if (finalText != null && file.equals(sourceFile)) {
+                    applyExternalChange(file, modified, finalText, finalEncoding, finalLoader, finalBaseText);
+                }
+                externalChangePending = false;
+            });
+        });
+    }
+
+    private String readFile(DocumentLoader fileLoader) throws IOException {
+        StringBuilder result = new StringBuilder();
+        try {
+            char[] buffer = new char[LOAD_CHUNK_SIZE];
+            int read = -1;
+            while ((read = fileLoader.read(buffer, 0, buffer.length)) > -1) {
+                result.append(buffer, 0, read);
+            }
+        } finally {
+            fileLoader.close();
+        }
+        
+        return result.toString();
+    }
+
+    /**
+     * A document without changes is updated to match the file. A changed document
+     * is left alone unless the user chooses to reload or merge it.
+     */
+    private void applyExternalChange(File file, long modified, String text, String fileEncoding, 
+            DocumentLoader fileLoader, String baseText) {
+        if (!dirty) {
+            reloadText(text);
+            lineIndex.setLineEndings(fileLoader.getLineEndings());
+            byteOrderMark = fileLoader.hasByteOrderMark();
+            dirty = false;
+            encoding = fileEncoding;
+            setSourceFile(file, modified, fileLoader.getFileLength(), fileEncoding);
+            baseVersion = null;
+            jNotepad.setTitle(this);
+            return;
+        }
+        
+        String[] options = baseText != null ? new String[] {"Merge", "Reload", "Keep Mine"} : new String[] {"Reload", "Keep Mine"};
+        int choice = JOptionPane.showOptionDialog(this, 
+                "<html><p>" + file + " has been changed by another program.</p>" + 
+                "<p>This document also has changes that have not been saved.</p></html>", 
+                "File Changed", 
+                JOptionPane.DEFAULT_OPTION, 
+                JOptionPane.WARNING_MESSAGE, 
+                null, 
+                options, 
+                options[0]);
+        String selected = choice >= 0 ? options[choice] : "Keep Mine";
+        if (selected.equals("Reload")) {
+            reloadText(text);
+            lineIndex.setLineEndings(fileLoader.getLineEndings());
+            byteOrderMark = fileLoader.hasByteOrderMark();
+            dirty = false;
+            encoding = fileEncoding;
+            deleteJournal();
+        } else if (selected.equals("Merge")) {
+            LineDiff.Merge merge = LineDiff.merge(baseText, getText(), text);
+            reloadText(merge.getText());
+            if (merge.getConflicts() > 0) {
+                JOptionPane.showMessageDialog(this, 
+                        merge.getConflicts() + " changes conflict with changes in the document. Both versions are kept between conflict markers.", 
+                        "File Changed", JOptionPane.WARNING_MESSAGE);
+            }
+        }
+        setSourceFile(file, modified, fileLoader.getFileLength(), fileEncoding);
+        baseVersion = null;
+        if (dirty) {
+            // the journal is based on the file, which no longer holds the text it started from
+            deleteJournal();
+            journalWholeText();
+            recordBaseVersion();
+        }
+        jNotepad.setTitle(this);
+    }
+
+    /**
+     * Replace the changed lines without recording them as changes made by the user.
+     */
+    private void reloadText(String text) {
+        reloading = true;
+        try {
+            replaceText(text);
+        } finally {
+            reloading = false;
+        }
+    }
+
+    /**
+     * @return The file the document was last saved to or read from, null for a new document.
+     */
+    public File getFile() {
+        return fileName.equals(newFileName) ? null : new File(filePath + FILE_SEPARATOR + fileName);
+    }
+
+    /**
+     * Remember which file on disk holds the text as it was last read or written.
+     */
+    private void setSourceFile(File file, long modified, long length, String fileEncoding) {
+        if (!file.equals(sourceFile)) {
+            if (sourceFile != null) {
+                FileWatcher.unwatch(sourceFile, fileChangeListener);
+            }
+            FileWatcher.watch(file, fileChangeListener);
+        }
+        sourceFile = file;
+        sourceModified = modified;
+        sourceLength = length;
+        sourceEncoding = fileEncoding;
+    }
+
+    /**
+     * Start the journal on the first change after the document was loaded or saved.
+     * 
+     * @return true if changes can be recorded.
+     */
+    private boolean openJournal() {
+        if (journal == null && !journalFailed) {
+            try {
+                journal = sourceFile != null ? new EditJournal(sourceFile, sourceModified, sourceEncoding) : 
+                    new EditJournal(null, 0, encoding);
+            } catch (IOException e) {
+                //editing carries on without the ability to recover the changes
+                journalFailed = true;
+            }
+        }
+        
+        return journal != null;
+    }
+
+    /**
+     * Start a journal holding the whole text, for text that does not match any file.
+     */
+    private void journalWholeText() {
+        try {
+            journal = new EditJournal(null, 0, encoding);
+            journal.recordInsert(0, document.getText(0, document.getLength()));
+        } catch (IOException e) {
+            //editing carries on without the ability to recover the changes
+            journalFailed = true;
+        } catch (BadLocationException e) {
+            //should not occur as the range is the whole document
+            e.printStackTrace();
+        }
+    }
+
+    private void deleteJournal() {
+        if (journal != null) {
+            journal.delete();
+            journal = null;
+        }
+    }
+
+    /**
+     * Block until every save that has been started is written to disk.
+     */
+    public static void waitForSaves() {
+        try {
+            SAVE_EXECUTOR.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            //an empty task cannot fail
+        }
+    }
+
     /**
      * Check if this tab can be closed. If it is the last tab
      * a check is made to see if it is a new tab with no changes.
@@ -827,16 +1858,22 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
 
     @Override
     public void changedUpdate(DocumentEvent e) {
-        documentUpdated();
+        // only the highlighting changes attributes, which leaves the text as it was
     }
 
     @Override
     public void insertUpdate(DocumentEvent e) {
+        if (!reloading && openJournal()) {
+            journal.insertUpdate(e);
+        }
         documentUpdated();
     }
 
     @Override
     public void removeUpdate(DocumentEvent e) {
+        if (!reloading && openJournal()) {
+            journal.removeUpdate(e);
+        }
         documentUpdated();
     }
     
@@ -858,8 +1895,11 @@ public class TextDocument extends JPanel implements DocumentListener, KeyListene
         if (!dirty) {
             dirty = true;
             jNotepad.setTitle();
+            if (!reloading) {
+                recordBaseVersion();
+            }
         }
-        lineNumberComponent.revalidate();
+        lineNumberComponent.updateLineCount();
         repaint();
     }
 
@@ -175,6 +175,33 @@ public class FileAction extends AbstractAction {
         }
     }
 
+    /**
+     * Actions for the File > Local History menu item.
+     * 
+     * @author Mark Bernard
+     */
+    public static class HistoryAction extends AbstractAction {
+        private static final long serialVersionUID = 2617781923061370215L;
+        private JNotepad jNotepad;
+
+        /**
+         * Set up values appropriate to the Local History menu item.
+         * 
+         * @param jNotepad 
+         */
+        public HistoryAction(JNotepad jNotepad) {
+            this.jNotepad = jNotepad;
+            putValue(Action.MNEMONIC_KEY, KeyEvent.VK_H);
+            putValue(Action.NAME, "Local History...");
+            putValue(Action.SHORT_DESCRIPTION, "Compare or restore saved versions of the document.");
+        }
+        
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            jNotepad.showHistory();
+        }
+    }
+
     /**
      * Actions for the File > Page Setup menu item.
      * 
@@ -96,4 +96,30 @@ public class ViewAction extends AbstractAction {
             }, "Status Bar").start();
         }
     }
+
+    /**
+     * Actions for the View > Follow menu item.
+     * 
+     * @author Mark Bernard
+     */
+    public static class FollowAction extends AbstractAction {
+        private static final long serialVersionUID = -4718095734716823420L;
+        
+        private JNotepad jNotepad;
+
+        /**
+         * @param jNotepad
+         */
+        public FollowAction(JNotepad jNotepad) {
+            this.jNotepad = jNotepad;
+            putValue(NAME, "Follow");
+            putValue(MNEMONIC_KEY, KeyEvent.VK_F);
+            putValue(SHORT_DESCRIPTION, "Add text written to the end of the file as it is written.");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            jNotepad.follow();
+        }
+    }
 }
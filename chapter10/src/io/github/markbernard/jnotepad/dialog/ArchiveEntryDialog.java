@@ -0,0 +1,172 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.dialog;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.GridLayout;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+
+/**
+ * Lets the user pick the entries of a zip or jar archive to open. Entries are
+ * added to the list in batches while the archive is read so a large archive 
+ * can be browsed right away.
+ * 
+ * @author Mark Bernard
+ */
+public class ArchiveEntryDialog extends BasicDialog {
+    private static final long serialVersionUID = -3207961512447046382L;
+    private static final int BATCH_SIZE = 500;
+    
+    private DefaultListModel<String> entryModel;
+    private JList<String> entryList;
+    private JLabel statusLabel;
+    private volatile boolean closed;
+    private boolean open;
+
+    /**
+     * Set up GUI
+     * 
+     * @param frame 
+     * @param archive The archive to list.
+     */
+    public ArchiveEntryDialog(JFrame frame, File archive) {
+        super(frame, "Open from " + archive.getName(), true);
+        setLayout(new BorderLayout());
+        JPanel mainPanel = new JPanel(new BorderLayout());
+        add(mainPanel, BorderLayout.CENTER);
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(6, 5, 6, 5));
+        
+        statusLabel = new JLabel("Reading entries...");
+        mainPanel.add(statusLabel, BorderLayout.NORTH);
+        entryModel = new DefaultListModel<>();
+        entryList = new JList<>(entryModel);
+        entryList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        addEscapeToActionMap(entryList);
+        JScrollPane entryScroll = new JScrollPane(entryList);
+        entryScroll.setPreferredSize(new Dimension(500, 350));
+        mainPanel.add(entryScroll, BorderLayout.CENTER);
+        
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        mainPanel.add(bottomPanel, BorderLayout.SOUTH);
+        bottomPanel.setBorder(BorderFactory.createEmptyBorder(4, 0, 4, 0));
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 0, 5, 5));
+        bottomPanel.add(buttonPanel, BorderLayout.EAST);
+        JButton openButton = new JButton("Open");
+        addEscapeToActionMap(openButton);
+        buttonPanel.add(openButton);
+        getRootPane().setDefaultButton(openButton);
+        openButton.setMnemonic(KeyEvent.VK_O);
+        JButton cancelButton = new JButton("Cancel");
+        addEscapeToActionMap(cancelButton);
+        buttonPanel.add(cancelButton);
+        
+        openButton.addActionListener((event) -> {
+            open = !entryList.isSelectionEmpty();
+            setVisible(false);
+        });
+        cancelButton.addActionListener((event) -> {
+            open = false;
+            setVisible(false);
+        });
+        entryList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && !entryList.isSelectionEmpty()) {
+                    open = true;
+                    setVisible(false);
+                }
+            }
+        });
+        
+        new Thread(() -> listEntries(archive), "Archive Entries").start();
+    }
+
+    private void listEntries(File archive) {
+        int count = 0;
+        String message;
+        try (ZipFile zipFile = new ZipFile(archive)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            List<String> batch = new ArrayList<>();
+            while (entries.hasMoreElements() && !closed) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory()) {
+                    batch.add(entry.getName());
+                    count++;
+                }
+                if (batch.size() == BATCH_SIZE || !entries.hasMoreElements()) {
+                    List<String> names = batch;
+                    SwingUtilities.invokeLater(() -> names.forEach(entryModel::addElement));
+                    batch = new ArrayList<>();
+                }
+            }
+            message = count + " entries";
+        } catch (IOException e) {
+            message = "Unable to read the archive: " + e.getMessage();
+        }
+        String status = message;
+        SwingUtilities.invokeLater(() -> statusLabel.setText(status));
+    }
+    
+    /**
+     * @return true if the user picked entries to open, false if the user cancelled.
+     */
+    public boolean showDialog() {
+        pack();
+        centerDialog();
+        setVisible(true);
+        closed = true;
+        dispose();
+        
+        return open;
+    }
+
+    /**
+     * @return The names of the entries the user picked.
+     */
+    public List<String> getSelectedEntries() {
+        return entryList.getSelectedValuesList();
+    }
+
+    @Override
+    protected void userExit() {
+        open = false;
+    }
+}
@@ -20,26 +20,46 @@
 package io.github.markbernard.jnotepad.dialog;
 
 import java.awt.BorderLayout;
+import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Frame;
-import java.awt.GridLayout;
-import java.nio.charset.StandardCharsets;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import javax.swing.BorderFactory;
-import javax.swing.ButtonGroup;
+import javax.swing.DefaultListModel;
 import javax.swing.JButton;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JPanel;
-import javax.swing.JRadioButton;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 /**
+ * Lets the user pick any encoding the Java runtime can write. Finding the 
+ * available charsets loads every charset provider, so the list is built on a
+ * background thread the first time the dialog is shown and kept afterwards.
+ * 
  * @author Mark Bernard
  *
  */
 public class EncodingDialog extends BasicDialog {
     private static final long serialVersionUID = 8540171150229302594L;
+    private static List<String> encodingNames;
     
     private JButton okButton;
+    private JTextField filterText;
+    private DefaultListModel<String> encodingModel;
+    private JList<String> encodingList;
     private boolean encodingSelected;
     private String selectedEncoding;
 
@@ -51,45 +71,59 @@ public class EncodingDialog extends BasicDialog {
         super(owner, "Select Encoding", true);
         
         encodingSelected = false;
+        selectedEncoding = getCanonicalName(encoding);
         
         setLayout(new BorderLayout());
         JPanel mainPanel = new JPanel(new BorderLayout());
         add(mainPanel, BorderLayout.CENTER);
         mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         
-        JPanel titlePanel = new JPanel();
+        JPanel titlePanel = new JPanel(new BorderLayout(0, 5));
         mainPanel.add(titlePanel, BorderLayout.NORTH);
-        titlePanel.add(new JLabel("Select the encoding from one of the supported encodings."));
+        titlePanel.add(new JLabel("Select the encoding from one of the supported encodings."), BorderLayout.NORTH);
+        filterText = new JTextField();
+        addEscapeToActionMap(filterText);
+        titlePanel.add(filterText, BorderLayout.SOUTH);
+        filterText.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                filterEncodings();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                filterEncodings();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {}
+        });
         
-        boolean enableOkButton = false;
-        JPanel encodingListPanel = new JPanel(new GridLayout(0, 1));
+        JPanel encodingListPanel = new JPanel(new BorderLayout());
         mainPanel.add(encodingListPanel, BorderLayout.CENTER);
         encodingListPanel.setBorder(BorderFactory.createCompoundBorder(BorderFactory.createTitledBorder("Encodings"), BorderFactory.createEmptyBorder(5, 5, 5, 5)));
-        ButtonGroup encodingButtonGroup = new ButtonGroup();
-        JRadioButton utf8 = createButton(StandardCharsets.UTF_8.name(), encodingListPanel, encodingButtonGroup);
-        if (!enableOkButton) {
-            enableOkButton = checkEncodingName(utf8, encoding, StandardCharsets.UTF_8.name());
-        }
-        JRadioButton utf16 = createButton(StandardCharsets.UTF_16.name(), encodingListPanel, encodingButtonGroup);
-        if (!enableOkButton) {
-            enableOkButton = checkEncodingName(utf16, encoding, StandardCharsets.UTF_16.name());
-        }
-        JRadioButton utf16be = createButton(StandardCharsets.UTF_16BE.name(), encodingListPanel, encodingButtonGroup);
-        if (!enableOkButton) {
-            enableOkButton = checkEncodingName(utf16be, encoding, StandardCharsets.UTF_16BE.name());
-        }
-        JRadioButton utf16le = createButton(StandardCharsets.UTF_16LE.name(), encodingListPanel, encodingButtonGroup);
-        if (!enableOkButton) {
-            enableOkButton = checkEncodingName(utf16le, encoding, StandardCharsets.UTF_16LE.name());
-        }
-        JRadioButton usAscii = createButton(StandardCharsets.US_ASCII.name(), encodingListPanel, encodingButtonGroup);
-        if (!enableOkButton) {
-            enableOkButton = checkEncodingName(usAscii, encoding, StandardCharsets.US_ASCII.name());
-        }
-        JRadioButton iso88591 = createButton(StandardCharsets.ISO_8859_1.name(), encodingListPanel, encodingButtonGroup);
-        if (!enableOkButton) {
-            enableOkButton = checkEncodingName(iso88591, encoding, StandardCharsets.ISO_8859_1.name());
-        }
+        encodingModel = new DefaultListModel<>();
+        encodingList = new JList<>(encodingModel);
+        encodingList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        addEscapeToActionMap(encodingList);
+        JScrollPane encodingScroll = new JScrollPane(encodingList);
+        encodingScroll.setPreferredSize(new Dimension(320, 300));
+        encodingListPanel.add(encodingScroll, BorderLayout.CENTER);
+        encodingList.addListSelectionListener((event) -> {
+            if (encodingList.getSelectedValue() != null) {
+                selectedEncoding = encodingList.getSelectedValue();
+            }
+            okButton.setEnabled(encodingList.getSelectedValue() != null);
+        });
+        encodingList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && encodingList.getSelectedValue() != null) {
+                    encodingSelected = true;
+                    setVisible(false);
+                }
+            }
+        });
         
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         mainPanel.add(buttonPanel, BorderLayout.SOUTH);
@@ -97,7 +131,7 @@ public class EncodingDialog extends BasicDialog {
         buttonPanel.add(okButton);
         getRootPane().setDefaultButton(okButton);
         addEscapeToActionMap(okButton);
-        okButton.setEnabled(enableOkButton);
+        okButton.setEnabled(false);
         okButton.addActionListener((event) -> {
             encodingSelected = true;
             setVisible(false);
@@ -110,34 +144,79 @@ public class EncodingDialog extends BasicDialog {
             setVisible(false);
         });
         
-        centerDialog();
-        pack();
-    }
-    
-    private JRadioButton createButton(String name, JPanel encodingListPanel, ButtonGroup encodingButtonGroup) {
-        JRadioButton radioButton = new JRadioButton(name);
-        encodingButtonGroup.add(radioButton);
-        encodingListPanel.add(radioButton);
-        addEscapeToActionMap(radioButton);
-        radioButton.addActionListener((event) -> {
-            okButton.setEnabled(true);
-            selectedEncoding = name;
-        });
+        if (getCachedEncodingNames() != null) {
+            filterEncodings();
+        } else {
+            encodingModel.addElement("Loading...");
+            encodingList.setEnabled(false);
+            new Thread(() -> {
+                loadEncodingNames();
+                SwingUtilities.invokeLater(() -> {
+                    encodingList.setEnabled(true);
+                    filterEncodings();
+                });
+            }, "Encodings").start();
+        }
         
-        return radioButton;
+        pack();
+        centerDialog();
     }
-    
-    private boolean checkEncodingName(JRadioButton radioButton, String encoding, String name) {
-        boolean result = false;
-        
-        if (encoding.equals(name)) {
-            radioButton.setSelected(true);
-            selectedEncoding = encoding;
-            result = true;
+
+    private static String getCanonicalName(String encoding) {
+        String result = encoding;
+        try {
+            if (Charset.isSupported(encoding)) {
+                result = Charset.forName(encoding).name();
+            }
+        } catch (IllegalCharsetNameException e) {
+            //nothing in the list matches it so nothing is selected
         }
         
         return result;
     }
+
+    private static synchronized List<String> getCachedEncodingNames() {
+        return encodingNames;
+    }
+
+    /**
+     * Only charsets that can write text are listed, some can only be read.
+     */
+    private static synchronized void loadEncodingNames() {
+        if (encodingNames == null) {
+            List<String> names = new ArrayList<>();
+            for (Charset charset : Charset.availableCharsets().values()) {
+                if (charset.canEncode()) {
+                    names.add(charset.name());
+                }
+            }
+            encodingNames = Collections.unmodifiableList(names);
+        }
+    }
+
+    private void filterEncodings() {
+        List<String> names = getCachedEncodingNames();
+        if (names == null) {
+            return;
+        }
+        String filter = filterText.getText().trim().toLowerCase();
+        String selected = selectedEncoding;
+        encodingModel.clear();
+        for (String name : names) {
+            if (name.toLowerCase().contains(filter)) {
+                encodingModel.addElement(name);
+            }
+        }
+        int index = encodingModel.indexOf(selected);
+        if (index > -1) {
+            encodingList.setSelectedIndex(index);
+            encodingList.ensureIndexIsVisible(index);
+        } else if (!encodingModel.isEmpty() && !filter.isEmpty()) {
+            encodingList.setSelectedIndex(0);
+        } else {
+            encodingList.clearSelection();
+        }
+    }
     
     /**
      * @return true if an encoding was selected.
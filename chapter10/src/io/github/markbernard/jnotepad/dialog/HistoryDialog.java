@@ -0,0 +1,229 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.dialog;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTextArea;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+
+import io.github.markbernard.jnotepad.TextDocument;
+import io.github.markbernard.jnotepad.document.LineDiff;
+import io.github.markbernard.jnotepad.document.LocalHistory;
+
+/**
+ * Lists the saved versions of the file in a document. The selected version can
+ * be compared with the document or restored into it.
+ * 
+ * @author Mark Bernard
+ */
+public class HistoryDialog extends BasicDialog {
+    private static final long serialVersionUID = 4102650227348106571L;
+    private static final DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    // keeps the comparison readable and quick to display for versions with little in common
+    private static final int MAX_DIFF_LINES = 5000;
+    
+    private TextDocument textDocument;
+    private JList<LocalHistory.Version> versionList;
+    private JTextArea diffText;
+    private JButton compareButton;
+    private JButton restoreButton;
+
+    /**
+     * Set up GUI
+     * 
+     * @param frame 
+     * @param textDocument The document to compare with and restore into.
+     * @param file The file the document was saved to.
+     */
+    public HistoryDialog(JFrame frame, TextDocument textDocument, File file) {
+        super(frame, "Local History", true);
+        this.textDocument = textDocument;
+        setLayout(new BorderLayout());
+        JPanel mainPanel = new JPanel(new BorderLayout());
+        add(mainPanel, BorderLayout.CENTER);
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(6, 5, 6, 5));
+        
+        mainPanel.add(new JLabel("Saved versions of " + file.getAbsolutePath()), BorderLayout.NORTH);
+        List<LocalHistory.Version> versions = LocalHistory.getVersions(file);
+        versionList = new JList<>(versions.toArray(new LocalHistory.Version[versions.size()]));
+        versionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        versionList.setCellRenderer(new DefaultListCellRenderer() {
+            private static final long serialVersionUID = -1493960541366410398L;
+
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                LocalHistory.Version version = (LocalHistory.Version)value;
+                return super.getListCellRendererComponent(list, 
+                        DATE_FORMAT.format(new Date(version.getTime())) + "    " + String.format("%,d bytes", version.getSize()), 
+                        index, isSelected, cellHasFocus);
+            }
+        });
+        addEscapeToActionMap(versionList);
+        diffText = new JTextArea();
+        diffText.setEditable(false);
+        diffText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        addEscapeToActionMap(diffText);
+        JScrollPane versionScroll = new JScrollPane(versionList);
+        versionScroll.setPreferredSize(new Dimension(600, 150));
+        JScrollPane diffScroll = new JScrollPane(diffText);
+        diffScroll.setPreferredSize(new Dimension(600, 300));
+        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, versionScroll, diffScroll);
+        mainPanel.add(splitPane, BorderLayout.CENTER);
+        
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        mainPanel.add(bottomPanel, BorderLayout.SOUTH);
+        bottomPanel.setBorder(BorderFactory.createEmptyBorder(4, 0, 4, 0));
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 0, 5, 5));
+        bottomPanel.add(buttonPanel, BorderLayout.EAST);
+        compareButton = new JButton("Compare");
+        addEscapeToActionMap(compareButton);
+        buttonPanel.add(compareButton);
+        compareButton.setMnemonic(KeyEvent.VK_C);
+        getRootPane().setDefaultButton(compareButton);
+        restoreButton = new JButton("Restore");
+        addEscapeToActionMap(restoreButton);
+        buttonPanel.add(restoreButton);
+        restoreButton.setMnemonic(KeyEvent.VK_R);
+        JButton closeButton = new JButton("Close");
+        addEscapeToActionMap(closeButton);
+        buttonPanel.add(closeButton);
+        
+        compareButton.setEnabled(false);
+        restoreButton.setEnabled(false);
+        versionList.addListSelectionListener((event) -> {
+            boolean selected = versionList.getSelectedValue() != null;
+            compareButton.setEnabled(selected);
+            restoreButton.setEnabled(selected);
+        });
+        
+        compareButton.addActionListener((event) -> readSelectedVersion(false));
+        restoreButton.addActionListener((event) -> readSelectedVersion(true));
+        closeButton.addActionListener((event) -> setVisible(false));
+    }
+    
+    /**
+     * Show the dialog and wait for the user to close it.
+     */
+    public void showDialog() {
+        pack();
+        centerDialog();
+        setVisible(true);
+        dispose();
+    }
+
+    /**
+     * The version is read and compared on a separate thread since a version of a
+     * large file can take a while to put back together.
+     */
+    private void readSelectedVersion(boolean restore) {
+        LocalHistory.Version version = versionList.getSelectedValue();
+        String documentText = textDocument.getText();
+        String encoding = textDocument.getEncoding();
+        compareButton.setEnabled(false);
+        restoreButton.setEnabled(false);
+        diffText.setText("Reading version...");
+        new Thread(() -> {
+            String versionText;
+            try {
+                versionText = version.readText(encoding);
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(() -> {
+                    diffText.setText("Unable to read the version: " + e.getMessage());
+                    compareButton.setEnabled(true);
+                    restoreButton.setEnabled(true);
+                });
+                return;
+            }
+            
+            String result = restore ? null : formatDiff(versionText, documentText);
+            SwingUtilities.invokeLater(() -> {
+                if (restore) {
+                    textDocument.replaceText(versionText);
+                    setVisible(false);
+                } else {
+                    diffText.setText(result);
+                    diffText.setCaretPosition(0);
+                    compareButton.setEnabled(true);
+                    restoreButton.setEnabled(true);
+                }
+            });
+        }, "History").start();
+    }
+
+    private String formatDiff(String versionText, String documentText) {
+        List<LineDiff.Change> changes = LineDiff.diff(versionText, documentText);
+        if (changes.isEmpty()) {
+            return "The version is the same as the document.";
+        }
+        int[] versionStarts = LineDiff.lineStarts(versionText);
+        int[] documentStarts = LineDiff.lineStarts(documentText);
+        StringBuilder result = new StringBuilder();
+        int lines = 0;
+        for (LineDiff.Change change : changes) {
+            if (lines > MAX_DIFF_LINES) {
+                result.append("...\n");
+                break;
+            }
+            result.append(String.format("@@ -%d,%d +%d,%d @@\n", 
+                    change.getOriginalStart() + 1, change.getOriginalEnd() - change.getOriginalStart(), 
+                    change.getRevisedStart() + 1, change.getRevisedEnd() - change.getRevisedStart()));
+            lines += appendLines(result, "- ", versionText, versionStarts, change.getOriginalStart(), change.getOriginalEnd());
+            lines += appendLines(result, "+ ", documentText, documentStarts, change.getRevisedStart(), change.getRevisedEnd()) + 1;
+        }
+        
+        return result.toString();
+    }
+
+    private int appendLines(StringBuilder result, String prefix, String text, int[] starts, int from, int to) {
+        for (int i=from;i<to;i++) {
+            result.append(prefix).append(text, starts[i], starts[i + 1]);
+            if (starts[i + 1] == text.length() && !text.endsWith("\n")) {
+                result.append('\n');
+            }
+        }
+        
+        return to - from;
+    }
+
+    @Override
+    protected void userExit() {}
+}
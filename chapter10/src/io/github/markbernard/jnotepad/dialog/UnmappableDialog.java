@@ -0,0 +1,121 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.dialog;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.GridLayout;
+import java.awt.event.KeyEvent;
+import java.util.function.IntConsumer;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+
+/**
+ * Warns that characters of the document cannot be written in the chosen 
+ * encoding. Selecting a character in the list shows it in the document.
+ * 
+ * @author Mark Bernard
+ */
+public class UnmappableDialog extends BasicDialog {
+    private static final long serialVersionUID = 2940264510927410364L;
+    
+    private boolean saveSelected;
+
+    /**
+     * Set up GUI
+     * 
+     * @param frame 
+     * @param encoding The encoding the document is being saved in.
+     * @param descriptions A description of each character that cannot be written.
+     * @param complete false if there are more characters than the ones described.
+     * @param showCharacter Called with the index of the description the user selected.
+     */
+    public UnmappableDialog(JFrame frame, String encoding, String[] descriptions, boolean complete, IntConsumer showCharacter) {
+        super(frame, "Unmappable Characters", true);
+        setLayout(new BorderLayout());
+        JPanel mainPanel = new JPanel(new BorderLayout(0, 5));
+        add(mainPanel, BorderLayout.CENTER);
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(6, 5, 6, 5));
+        
+        String count = (complete ? "" : "At least ") + descriptions.length + 
+                (descriptions.length == 1 ? " character" : " characters");
+        mainPanel.add(new JLabel("<html><p>" + count + " cannot be written in <b>" + encoding + 
+                "</b> and will be saved as replacement characters.</p><p>Select one to show it in the document.</p></html>"), 
+                BorderLayout.NORTH);
+        JList<String> characterList = new JList<>(descriptions);
+        characterList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        addEscapeToActionMap(characterList);
+        characterList.addListSelectionListener((event) -> {
+            if (!event.getValueIsAdjusting() && characterList.getSelectedIndex() > -1) {
+                showCharacter.accept(characterList.getSelectedIndex());
+            }
+        });
+        JScrollPane characterScroll = new JScrollPane(characterList);
+        characterScroll.setPreferredSize(new Dimension(420, 200));
+        mainPanel.add(characterScroll, BorderLayout.CENTER);
+        
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        mainPanel.add(bottomPanel, BorderLayout.SOUTH);
+        bottomPanel.setBorder(BorderFactory.createEmptyBorder(4, 0, 4, 0));
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 0, 5, 5));
+        bottomPanel.add(buttonPanel, BorderLayout.EAST);
+        JButton saveButton = new JButton("Save Anyway");
+        addEscapeToActionMap(saveButton);
+        buttonPanel.add(saveButton);
+        saveButton.setMnemonic(KeyEvent.VK_S);
+        JButton cancelButton = new JButton("Cancel");
+        addEscapeToActionMap(cancelButton);
+        buttonPanel.add(cancelButton);
+        getRootPane().setDefaultButton(cancelButton);
+        
+        saveButton.addActionListener((event) -> {
+            saveSelected = true;
+            setVisible(false);
+        });
+        cancelButton.addActionListener((event) -> {
+            saveSelected = false;
+            setVisible(false);
+        });
+    }
+    
+    /**
+     * @return true if the user chose to save anyway, false if the user cancelled.
+     */
+    public boolean showDialog() {
+        pack();
+        centerDialog();
+        setVisible(true);
+        dispose();
+        
+        return saveSelected;
+    }
+
+    @Override
+    protected void userExit() {
+        saveSelected = false;
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Element;
+import javax.swing.text.StyleContext;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * A styled document that can take a whole batch of styled text in one insert
+ * and one document event, and restyle many paragraphs in one change event.
+ * 
+ * @author Mark Bernard
+ */
+public class BulkStyledDocument extends DefaultStyledDocument {
+    private static final long serialVersionUID = -2630415384092137275L;
+
+    /**
+     * @param content
+     * @param styles
+     */
+    public BulkStyledDocument(Content content, StyleContext styles) {
+        super(content, styles);
+    }
+
+    /**
+     * Insert the text and styles collected in the batch. Document filters are not
+     * consulted and a single insert event is fired for the whole batch.
+     * 
+     * @param offset
+     * @param batch
+     * @throws BadLocationException
+     */
+    public void insert(int offset, StyledBatch batch) throws BadLocationException {
+        if (batch.getLength() > 0) {
+            boolean afterLineBreak = offset > 0 && getText(offset - 1, 1).charAt(0) == '\n';
+            ElementSpec[] specs = batch.toElementSpecs(getParagraphElement(offset).getAttributes(), afterLineBreak);
+            if (offset > 0 && specs[0].getType() == ElementSpec.ContentType && 
+                    getCharacterElement(offset - 1).getAttributes().isEqual(specs[0].getAttributes())) {
+                // extend the run before the insert instead of starting a new one with the same style
+                specs[0].setDirection(ElementSpec.JoinPreviousDirection);
+            }
+            insert(offset, specs);
+        }
+    }
+
+    /**
+     * Replace the character elements of each paragraph in the set with elements 
+     * for its new runs. A single change event is fired for all of them. 
+     * <p>
+     * The change is reported as an undoable edit that takes the place of the edit 
+     * before it, so undoing that edit first restores the styles it was followed by. 
+     * Each element edit is then undone against the structure it was recorded with.
+     * 
+     * @param runs
+     */
+    public void setParagraphRuns(ParagraphRuns runs) {
+        if (runs.size() == 0) {
+            return;
+        }
+        try {
+            writeLock();
+            Element root = getDefaultRootElement();
+            int start = root.getElement(runs.getParagraph(0)).getStartOffset();
+            int end = root.getElement(runs.getParagraph(runs.size() - 1)).getEndOffset();
+            DefaultDocumentEvent changes = new DefaultDocumentEvent(start, end - start, DocumentEvent.EventType.CHANGE);
+            for (int i=0;i<runs.size();i++) {
+                BranchElement paragraph = (BranchElement)root.getElement(runs.getParagraph(i));
+                Element[] removed = new Element[paragraph.getElementCount()];
+                for (int j=0;j<removed.length;j++) {
+                    removed[j] = paragraph.getElement(j);
+                }
+                int firstRun = runs.getFirstRun(i);
+                Element[] added = new Element[runs.getRunCount(i)];
+                int runStart = paragraph.getStartOffset();
+                for (int j=0;j<added.length;j++) {
+                    int runEnd = j == added.length - 1 ? paragraph.getEndOffset() : runs.getRunEnd(firstRun + j);
+                    added[j] = createLeafElement(paragraph, runs.getRunStyle(firstRun + j), runStart, runEnd);
+                    runStart = runEnd;
+                }
+                paragraph.replace(0, removed.length, added);
+                changes.addEdit(new ElementEdit(paragraph, 0, removed, added));
+            }
+            changes.end();
+            fireChangedUpdate(changes);
+            fireUndoableEditUpdate(new UndoableEditEvent(this, new StyleEdit(changes)));
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * Style changes that are undone along with the edit they follow. Style changes 
+     * made before any other edit have nothing to join and can never be undone.
+     */
+    private static class StyleEdit extends AbstractUndoableEdit {
+        private static final long serialVersionUID = 4071591270693426512L;
+
+        private UndoableEdit previous;
+        private UndoableEdit[] changes;
+
+        StyleEdit(UndoableEdit change) {
+            changes = new UndoableEdit[] {change};
+        }
+
+        @Override
+        public boolean replaceEdit(UndoableEdit edit) {
+            if (edit instanceof StyleEdit) {
+                // joined into a flat list so a long run of style changes does not nest
+                StyleEdit styleEdit = (StyleEdit)edit;
+                UndoableEdit[] joined = new UndoableEdit[styleEdit.changes.length + changes.length];
+                System.arraycopy(styleEdit.changes, 0, joined, 0, styleEdit.changes.length);
+                System.arraycopy(changes, 0, joined, styleEdit.changes.length, changes.length);
+                changes = joined;
+                previous = styleEdit.previous;
+            } else {
+                previous = edit;
+            }
+            
+            return true;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            for (int i=changes.length-1;i>=0;i--) {
+                changes[i].undo();
+            }
+            if (previous != null) {
+                previous.undo();
+            }
+        }
+
+        @Override
+        public boolean canUndo() {
+            return super.canUndo() && previous != null;
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            if (previous != null) {
+                previous.redo();
+            }
+            for (UndoableEdit change : changes) {
+                change.redo();
+            }
+        }
+
+        @Override
+        public boolean isSignificant() {
+            return previous != null && previous.isSignificant();
+        }
+
+        @Override
+        public String getPresentationName() {
+            return previous != null ? previous.getPresentationName() : super.getPresentationName();
+        }
+
+        @Override
+        public void die() {
+            super.die();
+            if (previous != null) {
+                previous.die();
+            }
+            for (UndoableEdit change : changes) {
+                change.die();
+            }
+        }
+    }
+}
\ No newline at end of file
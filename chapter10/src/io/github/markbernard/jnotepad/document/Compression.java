@@ -0,0 +1,143 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The kinds of compressed files that can be opened. The kind is found from the
+ * first bytes of the file rather than its name.
+ * 
+ * @author Mark Bernard
+ */
+public enum Compression {
+    /**
+     * Not compressed.
+     */
+    NONE,
+    /**
+     * A single gzip compressed file.
+     */
+    GZIP,
+    /**
+     * A zip archive, including jar files, holding any number of entries.
+     */
+    ZIP;
+    
+    private static final int BUFFER_SIZE = 65536;
+
+    /**
+     * @param file
+     * @return The kind of compression used by the file.
+     * @throws IOException
+     */
+    public static Compression detect(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return detect(channel);
+        }
+    }
+
+    /**
+     * Check the first bytes of the file without changing the position of the channel.
+     * 
+     * @param channel
+     * @return The kind of compression used by the file.
+     * @throws IOException
+     */
+    public static Compression detect(FileChannel channel) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        while (magic.hasRemaining() && channel.read(magic, magic.position()) > 0) {
+            //positional reads leave the channel where it was
+        }
+        Compression result = NONE;
+        if (magic.position() >= 2 && isGzipMagic(magic.get(0), magic.get(1))) {
+            result = GZIP;
+        } else if (magic.position() == 4 && magic.get(0) == 'P' && magic.get(1) == 'K' && 
+                ((magic.get(2) == 3 && magic.get(3) == 4) || (magic.get(2) == 5 && magic.get(3) == 6))) {
+            result = ZIP;
+        }
+        
+        return result;
+    }
+
+    /**
+     * Wrap the channel of a gzip file so the uncompressed bytes are read from it.
+     * Other files are read from the channel as they are.
+     * 
+     * @param channel
+     * @return The channel to read the content of the file from.
+     * @throws IOException
+     */
+    public static ReadableByteChannel decompress(FileChannel channel) throws IOException {
+        ReadableByteChannel result = channel;
+        if (detect(channel) == GZIP) {
+            result = Channels.newChannel(new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+        }
+        
+        return result;
+    }
+
+    /**
+     * Uncompress the bytes of a gzip file held in memory, such as a version from 
+     * the local history. Other bytes are returned as they are.
+     * 
+     * @param bytes
+     * @return The content of the file.
+     * @throws IOException
+     */
+    public static byte[] decompress(byte[] bytes) throws IOException {
+        byte[] result = bytes;
+        if (bytes.length >= 2 && isGzipMagic(bytes[0], bytes[1])) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes), BUFFER_SIZE)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            result = out.toByteArray();
+        }
+        
+        return result;
+    }
+
+    private static boolean isGzipMagic(byte first, byte second) {
+        return (first & 0xFF) == 0x1F && (second & 0xFF) == 0x8B;
+    }
+
+    /**
+     * @param file
+     * @return true if the file is saved compressed, based on its name.
+     */
+    public static boolean isGzipName(File file) {
+        return file.getName().toLowerCase().endsWith(".gz");
+    }
+}
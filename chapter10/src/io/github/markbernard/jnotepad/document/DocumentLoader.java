@@ -0,0 +1,224 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file in a single pass through a FileChannel and a CharsetDecoder using
+ * buffers that are reused for the whole file. Line breaks are normalized to \n
+ * so the text can be placed in the document as it is read, the kind of each 
+ * break is kept in {@link LineEndings} so it can be restored when saving. A gzip file is 
+ * uncompressed as it is read, and an entry of an archive can be read from its
+ * stream.
+ * 
+ * @author Mark Bernard
+ */
+public class DocumentLoader extends Reader {
+    private static final int BYTE_BUFFER_SIZE = 65536;
+    static final byte[] UTF8_BOM = {(byte)0xEF, (byte)0xBB, (byte)0xBF};
+
+    private FileChannel fileChannel;
+    private ReadableByteChannel channel;
+    private CharsetDecoder decoder;
+    private ByteBuffer byteBuffer;
+    private CharBuffer charBuffer;
+    private boolean endOfInput;
+    private boolean flushed;
+    private boolean firstRead;
+    private boolean skipLineFeed;
+    private boolean byteOrderMark;
+    private LineEndings lineEndings;
+    private int position;
+    private long bytesRead;
+
+    /**
+     * @param file The file to read.
+     * @param charset The encoding of the file.
+     * @throws IOException
+     */
+    public DocumentLoader(File file, Charset charset) throws IOException {
+        fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        channel = Compression.decompress(fileChannel);
+        init(charset);
+    }
+
+    /**
+     * @param in The uncompressed content of an archive entry.
+     * @param charset The encoding of the content.
+     */
+    public DocumentLoader(InputStream in, Charset charset) {
+        channel = Channels.newChannel(in);
+        init(charset);
+    }
+
+    private void init(Charset charset) {
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        byteBuffer = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+        charBuffer = CharBuffer.allocate(BYTE_BUFFER_SIZE);
+        charBuffer.flip();
+        firstRead = charset.equals(StandardCharsets.UTF_8);
+        lineEndings = new LineEndings();
+    }
+
+    /**
+     * Fills the provided array as far as possible. Fewer characters than requested 
+     * are only returned at the end of the file.
+     */
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int count = 0;
+        while (count < len) {
+            if (!charBuffer.hasRemaining() && !decode()) {
+                if (skipLineFeed) {
+                    // the file ends with a carriage return
+                    skipLineFeed = false;
+                    lineEndings.add(LineEndings.CR);
+                }
+                break;
+            }
+            while (count < len && charBuffer.hasRemaining()) {
+                char c = charBuffer.get();
+                if (skipLineFeed) {
+                    // the kind of a carriage return is only known from the character after it
+                    skipLineFeed = false;
+                    if (c == '\n') {
+                        lineEndings.add(LineEndings.CRLF);
+                        continue;
+                    }
+                    lineEndings.add(LineEndings.CR);
+                }
+                if (c == '\r') {
+                    c = '\n';
+                    skipLineFeed = true;
+                } else if (c == '\n') {
+                    lineEndings.add(LineEndings.LF);
+                }
+                cbuf[off + count++] = c;
+                position++;
+            }
+        }
+        
+        return count == 0 && len > 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (fileChannel != null) {
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * @return The number of characters read so far.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return The line breaks read so far, complete once the end of the file is reached.
+     */
+    public LineEndings getLineEndings() {
+        return lineEndings;
+    }
+
+    /**
+     * @return The number of bytes of the file the text read so far came from, 
+     * -1 for a compressed file or an archive entry.
+     */
+    public long getFileLength() {
+        return fileChannel != null && channel == fileChannel ? bytesRead : -1;
+    }
+
+    /**
+     * @return true if the file starts with a UTF-8 byte order mark, which is not 
+     * part of the text. Known once the first characters have been read.
+     */
+    public boolean hasByteOrderMark() {
+        return byteOrderMark;
+    }
+
+    /**
+     * @return The number of bytes read from the file so far. For an archive entry
+     * this is the number of uncompressed bytes.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    private boolean decode() throws IOException {
+        if (flushed) {
+            return false;
+        }
+        charBuffer.clear();
+        while (charBuffer.position() == 0 && !flushed) {
+            if (!endOfInput) {
+                int read = channel.read(byteBuffer);
+                endOfInput = read < 0;
+                if (read > 0) {
+                    // a compressed file reports progress through the compressed bytes
+                    bytesRead = fileChannel != null ? fileChannel.position() : bytesRead + read;
+                }
+                skipByteOrderMark();
+            }
+            byteBuffer.flip();
+            decoder.decode(byteBuffer, charBuffer, endOfInput);
+            byteBuffer.compact();
+            if (endOfInput) {
+                decoder.flush(charBuffer);
+                flushed = true;
+            }
+        }
+        charBuffer.flip();
+        
+        return charBuffer.hasRemaining();
+    }
+
+    private void skipByteOrderMark() {
+        // the UTF-8 decoder passes a byte order mark through as a character
+        if (firstRead && (byteBuffer.position() >= UTF8_BOM.length || endOfInput)) {
+            firstRead = false;
+            if (byteBuffer.position() >= UTF8_BOM.length && byteBuffer.get(0) == UTF8_BOM[0] && 
+                    byteBuffer.get(1) == UTF8_BOM[1] && byteBuffer.get(2) == UTF8_BOM[2]) {
+                byteBuffer.flip();
+                byteBuffer.position(UTF8_BOM.length);
+                byteBuffer.compact();
+                byteOrderMark = true;
+            }
+        }
+    }
+}
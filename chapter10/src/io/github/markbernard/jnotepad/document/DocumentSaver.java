@@ -0,0 +1,281 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a snapshot of a document so the original file is never left partly 
+ * written. The text goes to a temporary file in the same directory, which is 
+ * forced to disk and then moved over the original in a single step.
+ * <p>
+ * The snapshot is encoded a chunk at a time into a small set of pooled direct
+ * buffers that are written together with one gathering write, so the memory 
+ * used by a save does not depend on the size of the document. Line breaks 
+ * are written as they were in the file the text was read from, as is the 
+ * byte order mark of a UTF-8 file.
+ * 
+ * @author Mark Bernard
+ */
+public class DocumentSaver {
+    private static final int CHUNK_SIZE = 65536;
+    private static final int BUFFERS_PER_WRITE = 8;
+    private static final Set<PosixFilePermission> NEW_FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+    private static final ConcurrentLinkedQueue<ByteBuffer> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Encode and write the snapshot. A file with a name ending in .gz is written 
+     * gzip compressed, the encoded text is compressed as it is written.
+     * 
+     * @param snapshot The text to write.
+     * @param lineEndings The kind of break to write at the end of each line.
+     * @param byteOrderMark true to start a UTF-8 file with a byte order mark.
+     * @param file The file to replace.
+     * @param encoding
+     * @throws IOException
+     */
+    public static void save(PieceTableContent.Snapshot snapshot, LineEndings lineEndings, boolean byteOrderMark, File file, 
+            String encoding) throws IOException {
+        replace(file, (channel) -> {
+            if (Compression.isGzipName(file)) {
+                GZIPOutputStream out = new GZIPOutputStream(Channels.newOutputStream(channel), CHUNK_SIZE);
+                write(snapshot, lineEndings, byteOrderMark, Charset.forName(encoding), Channels.newChannel(out));
+                // finished rather than closed so the file can still be forced to disk
+                out.finish();
+            } else {
+                write(snapshot, lineEndings, byteOrderMark, Charset.forName(encoding), channel);
+            }
+        });
+    }
+
+    /**
+     * Copy the bytes of an existing file without decoding and encoding them again.
+     * 
+     * @param source The file to copy.
+     * @param file The file to replace.
+     * @throws IOException
+     */
+    public static void copy(File source, File file) throws IOException {
+        replace(file, (channel) -> {
+            FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+            try {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, channel);
+                }
+            } finally {
+                in.close();
+            }
+        });
+    }
+
+    private static void replace(File file, ChannelWriter writer) throws IOException {
+        // a link is followed so the file it points to is replaced rather than the link itself
+        Path target = file.exists() ? file.toPath().toRealPath() : file.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        boolean moved = false;
+        try {
+            FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                writer.write(channel);
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+            copyPermissions(target, temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static void write(PieceTableContent.Snapshot snapshot, LineEndings lineEndings, boolean byteOrderMark, 
+            Charset charset, WritableByteChannel channel) throws IOException {
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+        // line feeds are written as they are held in the document
+        boolean lineFeeds = lineEndings.isUniform() && lineEndings.get(0) == LineEndings.LF;
+        char[] text = lineFeeds ? null : new char[CHUNK_SIZE / 2];
+        int line = 0;
+        ByteBuffer[] buffers = new ByteBuffer[BUFFERS_PER_WRITE];
+        for (int i=0;i<buffers.length;i++) {
+            buffers[i] = acquireBuffer();
+        }
+        try {
+            if (byteOrderMark && charset.equals(StandardCharsets.UTF_8)) {
+                buffers[0].put(DocumentLoader.UTF8_BOM);
+            }
+            int length = snapshot.getLength();
+            int position = 0;
+            int current = 0;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                int count;
+                if (lineFeeds) {
+                    count = Math.min(chars.remaining(), length - position);
+                    snapshot.getChars(position, count, chars.array(), chars.arrayOffset() + chars.position());
+                    chars.position(chars.position() + count);
+                } else {
+                    // a break can grow to two characters so only half of the free space is filled
+                    count = Math.min(chars.remaining() / 2, length - position);
+                    snapshot.getChars(position, count, text, 0);
+                    line = expandLineBreaks(text, count, chars, lineEndings, line);
+                }
+                position += count;
+                endOfInput = position == length;
+                chars.flip();
+                while (encoder.encode(chars, buffers[current], endOfInput).isOverflow()) {
+                    current = nextBuffer(channel, buffers, current);
+                }
+                // a surrogate pair split by the chunk boundary stays in the buffer for the next pass
+                chars.compact();
+            }
+            while (encoder.flush(buffers[current]).isOverflow()) {
+                current = nextBuffer(channel, buffers, current);
+            }
+            writeBuffers(channel, buffers, current + 1);
+        } finally {
+            for (ByteBuffer buffer : buffers) {
+                buffer.clear();
+                BUFFER_POOL.offer(buffer);
+            }
+        }
+    }
+
+    /**
+     * Copy the text into the buffer, replacing each \n with the break recorded for its line.
+     * 
+     * @return The line following the last break copied.
+     */
+    private static int expandLineBreaks(char[] text, int count, CharBuffer chars, LineEndings lineEndings, int line) {
+        char[] destination = chars.array();
+        int position = chars.arrayOffset() + chars.position();
+        int nextLine = line;
+        for (int i=0;i<count;i++) {
+            char c = text[i];
+            if (c == '\n') {
+                int type = lineEndings.get(nextLine++);
+                if (type != LineEndings.LF) {
+                    destination[position++] = '\r';
+                }
+                if (type != LineEndings.CR) {
+                    destination[position++] = '\n';
+                }
+            } else {
+                destination[position++] = c;
+            }
+        }
+        chars.position(position - chars.arrayOffset());
+        
+        return nextLine;
+    }
+
+    private static int nextBuffer(WritableByteChannel channel, ByteBuffer[] buffers, int current) throws IOException {
+        int next = current + 1;
+        if (next == buffers.length) {
+            writeBuffers(channel, buffers, buffers.length);
+            next = 0;
+        }
+        
+        return next;
+    }
+
+    private static void writeBuffers(WritableByteChannel channel, ByteBuffer[] buffers, int count) throws IOException {
+        long remaining = 0;
+        for (int i=0;i<count;i++) {
+            buffers[i].flip();
+            remaining += buffers[i].remaining();
+        }
+        if (channel instanceof GatheringByteChannel) {
+            while (remaining > 0) {
+                remaining -= ((GatheringByteChannel)channel).write(buffers, 0, count);
+            }
+        } else {
+            for (int i=0;i<count;i++) {
+                while (buffers[i].hasRemaining()) {
+                    channel.write(buffers[i]);
+                }
+            }
+        }
+        for (int i=0;i<count;i++) {
+            buffers[i].clear();
+        }
+    }
+
+    private static ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = BUFFER_POOL.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        
+        return buffer;
+    }
+
+    private static void copyPermissions(Path source, Path destination) {
+        // temporary files are created readable only by the owner
+        if (Files.getFileAttributeView(destination, PosixFileAttributeView.class) != null) {
+            try {
+                Files.setPosixFilePermissions(destination, Files.exists(source) ? 
+                        Files.getPosixFilePermissions(source) : NEW_FILE_PERMISSIONS);
+            } catch (IOException e) {
+                //the file is still saved, only with the default permissions
+            }
+        }
+    }
+
+    /**
+     * Fills the temporary file before it replaces the original.
+     */
+    private interface ChannelWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+}
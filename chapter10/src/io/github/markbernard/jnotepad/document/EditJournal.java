@@ -0,0 +1,407 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+
+/**
+ * Records every change made to a document in an append only file so unsaved
+ * work can be recovered after the application ends without closing its tabs.
+ * <p>
+ * The journal starts with the file the document was read from, followed by one
+ * record per insert or remove. Records are collected in memory on the event 
+ * dispatch thread and written and forced to disk by a shared timer thread, so
+ * typing never waits on the disk. A lock is held on the journal while it is in
+ * use, which is how a journal left behind by a crash is told apart from one that
+ * belongs to another running copy of the application.
+ * 
+ * @author Mark Bernard
+ */
+public class EditJournal implements DocumentListener {
+    private static final int MAGIC = 0x4A4E4A31;
+    private static final byte INSERT_RECORD = 1;
+    private static final byte REMOVE_RECORD = 2;
+    private static final long FLUSH_DELAY = 1000;
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final ScheduledExecutorService FLUSH_EXECUTOR = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "Journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File file;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private DataOutputStream pendingOut = new DataOutputStream(pending);
+    private boolean closed;
+
+    /**
+     * Create a new journal. The base is the file holding the text the document had
+     * before the first recorded change, or null if the document started out empty.
+     * 
+     * @param base
+     * @param baseModified
+     * @param encoding
+     * @throws IOException
+     */
+    public EditJournal(File base, long baseModified, String encoding) throws IOException {
+        File directory = getJournalDirectory();
+        Files.createDirectories(directory.toPath());
+        file = Files.createTempFile(directory.toPath(), "document", JOURNAL_SUFFIX).toFile();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        lock = channel.tryLock();
+        pendingOut.writeInt(MAGIC);
+        pendingOut.writeUTF(base == null ? "" : base.getAbsolutePath());
+        pendingOut.writeLong(baseModified);
+        pendingOut.writeUTF(encoding);
+        scheduleFlush();
+    }
+
+    /**
+     * @return The directory holding the journals of every open document.
+     */
+    public static File getJournalDirectory() {
+        return new File(new File(System.getProperty("user.home"), ".jnotepad"), "journal");
+    }
+
+    /**
+     * Record text placed in the document.
+     * 
+     * @param offset
+     * @param text
+     */
+    public synchronized void recordInsert(int offset, String text) {
+        if (!closed) {
+            if (pending.size() == 0) {
+                scheduleFlush();
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            try {
+                pendingOut.writeByte(INSERT_RECORD);
+                pendingOut.writeInt(offset);
+                pendingOut.writeInt(bytes.length);
+                pendingOut.write(bytes);
+            } catch (IOException e) {
+                //should not occur when writing to memory
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Record text taken out of the document.
+     * 
+     * @param offset
+     * @param length
+     */
+    public synchronized void recordRemove(int offset, int length) {
+        if (!closed) {
+            if (pending.size() == 0) {
+                scheduleFlush();
+            }
+            try {
+                pendingOut.writeByte(REMOVE_RECORD);
+                pendingOut.writeInt(offset);
+                pendingOut.writeInt(length);
+            } catch (IOException e) {
+                //should not occur when writing to memory
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Stop recording and delete the journal. Called when the changes no longer 
+     * need to be recovered, either because they were saved or thrown away.
+     */
+    public void delete() {
+        synchronized (this) {
+            closed = true;
+            pending.reset();
+        }
+        // the flush thread may be writing the last records so the channel is closed on that thread
+        FLUSH_EXECUTOR.execute(() -> {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                //the file is deleted either way
+            }
+            file.delete();
+        });
+    }
+
+    /**
+     * Block until every journal that has been deleted is closed and removed from
+     * disk. The flush thread does not keep the application running, so this is
+     * called before exiting.
+     */
+    public static void waitForDeletes() {
+        try {
+            // deletes run in the order they were queued and delayed flushes do not hold this up
+            FLUSH_EXECUTOR.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            //an empty task cannot fail
+        }
+    }
+
+    private void scheduleFlush() {
+        FLUSH_EXECUTOR.schedule(this::flush, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs on the flush thread. Every record collected since the last flush is
+     * written with a single write and forced to disk.
+     */
+    private void flush() {
+        ByteBuffer records;
+        synchronized (this) {
+            if (closed || pending.size() == 0) {
+                return;
+            }
+            records = ByteBuffer.wrap(pending.toByteArray());
+            pending.reset();
+        }
+        try {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            //a failed write only loses the ability to recover these changes
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        try {
+            recordInsert(e.getOffset(), e.getDocument().getText(e.getOffset(), e.getLength()));
+        } catch (BadLocationException ex) {
+            //should not occur as the inserted text is still in the document
+            ex.printStackTrace();
+        }
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        recordRemove(e.getOffset(), e.getLength());
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {}
+
+    /**
+     * Find the journals left behind by copies of the application that did not 
+     * close their documents and rebuild the text they recorded. Journals still 
+     * in use by a running copy are skipped.
+     * 
+     * @return The recovered documents.
+     */
+    public static List<Recovery> recover() {
+        List<Recovery> result = new ArrayList<>();
+        File[] journals = getJournalDirectory().listFiles((dir, name) -> name.endsWith(JOURNAL_SUFFIX));
+        if (journals != null) {
+            for (File journal : journals) {
+                Recovery recovery = recover(journal);
+                if (recovery != null) {
+                    result.add(recovery);
+                }
+            }
+        }
+        
+        return result;
+    }
+
+    private static Recovery recover(File journal) {
+        Recovery result = null;
+        try {
+            FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                FileLock lock = null;
+                try {
+                    lock = channel.tryLock();
+                } catch (OverlappingFileLockException e) {
+                    //held by this copy of the application
+                }
+                if (lock != null) {
+                    result = replay(journal, Channels.newInputStream(channel));
+                }
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            //the journal cannot be read so there is nothing to recover
+            e.printStackTrace();
+        }
+        
+        return result;
+    }
+
+    private static Recovery replay(File journal, InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC) {
+            journal.delete();
+            return null;
+        }
+        String basePath = in.readUTF();
+        long baseModified = in.readLong();
+        String encoding = in.readUTF();
+        File base = basePath.isEmpty() ? null : new File(basePath);
+        boolean baseChanged = base != null && base.lastModified() != baseModified;
+        PieceTableContent content = new PieceTableContent();
+        if (base != null && base.isFile()) {
+            readBase(base, encoding, content);
+        }
+        try {
+            while (true) {
+                byte type = in.readByte();
+                int offset = in.readInt();
+                int length = in.readInt();
+                int documentLength = content.length() - 1;
+                // offsets only fall outside the text when the base file was changed after the journal was started
+                offset = Math.min(Math.max(0, offset), documentLength);
+                if (type == INSERT_RECORD) {
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    content.insertString(offset, new String(bytes, StandardCharsets.UTF_8));
+                } else if (type == REMOVE_RECORD) {
+                    content.remove(offset, Math.min(length, documentLength - offset));
+                } else {
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            //the last record may have been only partly written
+        } catch (BadLocationException e) {
+            //should not occur as offsets are kept inside the text
+            e.printStackTrace();
+        }
+        String text;
+        try {
+            text = content.getString(0, content.length() - 1);
+        } catch (BadLocationException e) {
+            //should not occur as the range is the whole text
+            text = "";
+        }
+        
+        return new Recovery(journal, base, encoding, text, baseChanged);
+    }
+
+    private static void readBase(File base, String encoding, PieceTableContent content) throws IOException {
+        DocumentLoader loader = new DocumentLoader(base, Charset.isSupported(encoding) ? 
+                Charset.forName(encoding) : StandardCharsets.UTF_8);
+        try {
+            char[] buffer = new char[65536];
+            int read = -1;
+            while ((read = loader.read(buffer, 0, buffer.length)) > -1) {
+                content.insertString(content.length() - 1, new String(buffer, 0, read));
+            }
+        } catch (BadLocationException e) {
+            //should not occur as the end of the text always exists
+            e.printStackTrace();
+        } finally {
+            loader.close();
+        }
+    }
+
+    /**
+     * The text of a document rebuilt from a journal left behind by a crash.
+     */
+    public static class Recovery {
+        private final File journal;
+        private final File base;
+        private final String encoding;
+        private final String text;
+        private final boolean baseChanged;
+
+        Recovery(File journal, File base, String encoding, String text, boolean baseChanged) {
+            this.journal = journal;
+            this.base = base;
+            this.encoding = encoding;
+            this.text = text;
+            this.baseChanged = baseChanged;
+        }
+
+        /**
+         * @return The file the document was read from or null for a new document.
+         */
+        public File getBase() {
+            return base;
+        }
+
+        /**
+         * @return The encoding of the document.
+         */
+        public String getEncoding() {
+            return encoding;
+        }
+
+        /**
+         * @return The text of the document including every recorded change.
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return true if the file the document was read from was changed after the
+         * journal was started, in which case the recovered text may not be accurate.
+         */
+        public boolean isBaseChanged() {
+            return baseChanged;
+        }
+
+        /**
+         * Delete the journal once its text is held by a new document.
+         */
+        public void discard() {
+            journal.delete();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the characters of a document that cannot be written in an encoding, 
+ * so they can be shown to the user before the save replaces them. The text is
+ * split into chunks that are checked in parallel. Which characters of the 
+ * Basic Multilingual Plane an encoding can write is worked out once and kept,
+ * so the scan itself is a table lookup per character. Blocks of characters 
+ * that are all below the range the encoding fully covers, such as ASCII text 
+ * in most encodings, are skipped without looking at each character.
+ * 
+ * @author Mark Bernard
+ */
+public class EncodabilityScanner {
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int BLOCK_SIZE = 256;
+    private static final Map<String, long[]> encodableTables = Collections.synchronizedMap(new HashMap<>());
+
+    /**
+     * @param snapshot The text to check.
+     * @param charset The encoding the text will be written in.
+     * @param maximum The most positions to report.
+     * @return The offsets of the first characters that cannot be encoded, in 
+     * document order. A surrogate pair is reported at its first character.
+     */
+    public static int[] findUnmappable(PieceTableContent.Snapshot snapshot, Charset charset, int maximum) {
+        if (!charset.canEncode()) {
+            throw new IllegalArgumentException(charset.name() + " can only be used for reading");
+        }
+        long[] encodable = getEncodableTable(charset);
+        int safeLimit = getSafeLimit(encodable);
+        int length = snapshot.getLength();
+        int chunks = (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int[][] found = IntStream.range(0, chunks).parallel()
+                .mapToObj((chunk) -> scanChunk(snapshot, charset, encodable, safeLimit, chunk * CHUNK_SIZE, 
+                        Math.min(length, (chunk + 1) * CHUNK_SIZE), maximum))
+                .toArray(int[][]::new);
+        int[] result = new int[maximum];
+        int count = 0;
+        for (int i=0;i<found.length && count < maximum;i++) {
+            int copy = Math.min(found[i].length, maximum - count);
+            System.arraycopy(found[i], 0, result, count, copy);
+            count += copy;
+        }
+        
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int[] scanChunk(PieceTableContent.Snapshot snapshot, Charset charset, long[] encodable, 
+            int safeLimit, int start, int end, int maximum) {
+        // one character either side so surrogate pairs split by the chunk boundary are seen whole
+        int windowStart = Math.max(0, start - 1);
+        int windowEnd = Math.min(snapshot.getLength(), end + 1);
+        char[] text = new char[windowEnd - windowStart];
+        snapshot.getChars(windowStart, text.length, text, 0);
+        int[] found = new int[maximum];
+        int count = 0;
+        CharsetEncoder encoder = null;
+        int i = start - windowStart;
+        int last = end - windowStart;
+        while (i < last && count < maximum) {
+            int blockEnd = Math.min(last, i + BLOCK_SIZE);
+            int bits = 0;
+            for (int j=i;j<blockEnd;j++) {
+                bits |= text[j];
+            }
+            if (bits < safeLimit) {
+                i = blockEnd;
+                continue;
+            }
+            for (;i<blockEnd && count < maximum;i++) {
+                char c = text[i];
+                if ((encodable[c >>> 6] & (1L << c)) != 0) {
+                    continue;
+                }
+                boolean mappable;
+                if (Character.isHighSurrogate(c) && i + 1 < text.length && Character.isLowSurrogate(text[i + 1])) {
+                    if (encoder == null) {
+                        encoder = charset.newEncoder();
+                    }
+                    mappable = encoder.canEncode(new String(text, i, 2));
+                    if (mappable) {
+                        // the pair may run past the end of the block or the chunk
+                        i++;
+                    }
+                } else if (Character.isLowSurrogate(c) && i > 0 && Character.isHighSurrogate(text[i - 1])) {
+                    // the second half of a pair, checked along with the first half in the previous chunk
+                    mappable = true;
+                } else {
+                    mappable = false;
+                }
+                if (!mappable) {
+                    found[count++] = windowStart + i;
+                }
+            }
+        }
+        
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * @return The largest power of two that every character below can be encoded.
+     */
+    private static int getSafeLimit(long[] encodable) {
+        int limit = 1;
+        while (limit < Character.MIN_SURROGATE && isEncodableBelow(encodable, limit * 2)) {
+            limit *= 2;
+        }
+        
+        return limit;
+    }
+
+    private static boolean isEncodableBelow(long[] encodable, int limit) {
+        for (int c=0;c<limit;c++) {
+            if ((encodable[c >>> 6] & (1L << c)) == 0) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+
+    /**
+     * @return One bit per character of the Basic Multilingual Plane, set when the 
+     * encoding can write the character on its own. Surrogates are never set.
+     */
+    private static long[] getEncodableTable(Charset charset) {
+        long[] result = encodableTables.get(charset.name());
+        if (result == null) {
+            result = new long[(Character.MAX_VALUE + 1) / 64];
+            if (charset.name().startsWith("UTF-") || charset.name().equals("GB18030")) {
+                // the Unicode encodings can write everything except unpaired surrogates
+                Arrays.fill(result, -1L);
+                for (int c=Character.MIN_SURROGATE;c<=Character.MAX_SURROGATE;c++) {
+                    result[c >>> 6] &= ~(1L << c);
+                }
+            } else {
+                CharsetEncoder encoder = charset.newEncoder();
+                for (int c=0;c<=Character.MAX_VALUE;c++) {
+                    if (!Character.isSurrogate((char)c) && encoder.canEncode((char)c)) {
+                        result[c >>> 6] |= 1L << c;
+                    }
+                }
+            }
+            encodableTables.put(charset.name(), result);
+        }
+        
+        return result;
+    }
+}
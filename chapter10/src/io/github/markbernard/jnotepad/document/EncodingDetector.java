@@ -0,0 +1,250 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.tika.parser.txt.CharsetDetector;
+import org.apache.tika.parser.txt.CharsetMatch;
+
+/**
+ * Works out the encoding of a file. Byte order marks and plain ASCII or UTF-8 
+ * text are recognized by scanning the start of the file, after uncompressing 
+ * it for a gzip file. Only input that is none of those is handed to the Tika 
+ * CharsetDetector, which is not loaded until it is first needed. Results are 
+ * remembered per path, modification time and size so reopening a file does 
+ * not detect it again.
+ * 
+ * @author Mark Bernard
+ */
+public class EncodingDetector {
+    private static final int PREFIX_SIZE = 65536;
+    private static final int CACHE_SIZE = 64;
+    private static final int BINARY_CHECK_SIZE = 8192;
+    // content with more than one suspicious byte in this many is treated as binary
+    private static final int BINARY_RATIO = 32;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final Map<String, String> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, String>(CACHE_SIZE, 0.75f, true) {
+                private static final long serialVersionUID = 6279409011718434812L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+    /**
+     * @param file
+     * @return The name of the encoding of the file.
+     * @throws IOException
+     */
+    public static String detect(File file) throws IOException {
+        String key = file.getAbsolutePath() + "|" + file.lastModified() + "|" + file.length();
+        String result = cache.get(key);
+        
+        if (result == null) {
+            ByteBuffer prefix = ByteBuffer.allocate(PREFIX_SIZE);
+            boolean complete = false;
+            try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ); 
+                    ReadableByteChannel channel = Compression.decompress(fileChannel)) {
+                while (prefix.hasRemaining() && !complete) {
+                    complete = channel.read(prefix) < 0;
+                }
+            }
+            result = detect(prefix.array(), prefix.position(), complete);
+            cache.put(key, result);
+        }
+        
+        return result;
+    }
+
+    /**
+     * @param data The start of the text.
+     * @param length Number of valid bytes in data.
+     * @param complete true if data holds the whole text, false if it was cut off.
+     * @return The name of the encoding of the data.
+     */
+    public static String detect(byte[] data, int length, boolean complete) {
+        String result = detectByteOrderMark(data, length);
+        
+        if (result == null) {
+            if (isUtf8(data, length, complete)) {
+                result = StandardCharsets.UTF_8.name();
+            } else {
+                result = TikaDetection.detect(Arrays.copyOf(data, length));
+            }
+        }
+        
+        return result;
+    }
+
+    /**
+     * Check the first block of a file for binary content. A compressed file is
+     * checked after it is uncompressed.
+     * 
+     * @param file
+     * @return true if the file does not appear to hold text.
+     * @throws IOException
+     */
+    public static boolean isBinary(File file) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(BINARY_CHECK_SIZE);
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ); 
+                ReadableByteChannel channel = Compression.decompress(fileChannel)) {
+            while (block.hasRemaining() && channel.read(block) > -1) {
+                //fill the block unless the file is shorter
+            }
+        }
+        
+        return isBinary(block.array(), block.position());
+    }
+
+    /**
+     * Binary data is recognized by the share of NUL and control bytes that do 
+     * not occur in text. UTF-16 and UTF-32 text without a byte order mark has 
+     * its NUL bytes in the same columns, those are not counted.
+     * 
+     * @param data The start of the content.
+     * @param length Number of valid bytes in data.
+     * @return true if the data does not appear to be text.
+     */
+    public static boolean isBinary(byte[] data, int length) {
+        if (length == 0 || detectByteOrderMark(data, length) != null) {
+            return false;
+        }
+        int[] nulls = new int[4];
+        int controls = 0;
+        for (int i=0;i<length;i++) {
+            int b = data[i] & 0xFF;
+            if (b == 0) {
+                nulls[i & 3]++;
+            } else if ((b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x1B) || b == 0x7F) {
+                controls++;
+            }
+        }
+        int nullCount = nulls[0] + nulls[1] + nulls[2] + nulls[3];
+        boolean wideText = nullCount * 4 > length && 
+                (nulls[0] == 0 || nulls[1] == 0 || nulls[2] == 0 || nulls[3] == 0);
+        int suspicious = wideText ? controls : controls + nullCount;
+        
+        return suspicious * BINARY_RATIO > length;
+    }
+
+    private static String detectByteOrderMark(byte[] data, int length) {
+        String result = null;
+        
+        if (length >= 4 && data[0] == 0 && data[1] == 0 && data[2] == (byte)0xFE && data[3] == (byte)0xFF) {
+            result = "UTF-32";
+        } else if (length >= 4 && data[0] == (byte)0xFF && data[1] == (byte)0xFE && data[2] == 0 && data[3] == 0) {
+            result = "UTF-32";
+        } else if (length >= 3 && data[0] == (byte)0xEF && data[1] == (byte)0xBB && data[2] == (byte)0xBF) {
+            result = StandardCharsets.UTF_8.name();
+        } else if (length >= 2 && ((data[0] == (byte)0xFE && data[1] == (byte)0xFF) || 
+                (data[0] == (byte)0xFF && data[1] == (byte)0xFE))) {
+            // the UTF-16 decoder reads the byte order from the mark
+            result = StandardCharsets.UTF_16.name();
+        }
+        
+        return result;
+    }
+
+    /**
+     * @return true if the data is ASCII or well formed UTF-8 without NUL characters.
+     */
+    private static boolean isUtf8(byte[] data, int length, boolean complete) {
+        ByteBuffer words = ByteBuffer.wrap(data);
+        int i = 0;
+        while (i < length) {
+            // skip through ASCII eight bytes at a time
+            if (i + 8 <= length && (words.getLong(i) & HIGH_BITS) == 0 && !hasZeroByte(words.getLong(i))) {
+                i += 8;
+                continue;
+            }
+            int b = data[i] & 0xFF;
+            if (b == 0) {
+                // NUL characters mean UTF-16 or UTF-32 without a byte order mark, or binary data
+                return false;
+            }
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            int continuation;
+            int minimum;
+            if (b >= 0xC2 && b <= 0xDF) {
+                continuation = 1;
+                minimum = 0x80;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                continuation = 2;
+                minimum = 0x800;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                continuation = 3;
+                minimum = 0x10000;
+            } else {
+                return false;
+            }
+            if (i + continuation >= length) {
+                // a sequence cut off by the end of the prefix is not an error
+                return !complete;
+            }
+            int codePoint = b & (0x3F >> continuation);
+            for (int j=1;j<=continuation;j++) {
+                int next = data[i + j] & 0xFF;
+                if ((next & 0xC0) != 0x80) {
+                    return false;
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+            if (codePoint < minimum || codePoint > 0x10FFFF || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+                return false;
+            }
+            i += continuation + 1;
+        }
+        
+        return true;
+    }
+
+    private static boolean hasZeroByte(long word) {
+        return ((word - 0x0101010101010101L) & ~word & HIGH_BITS) != 0;
+    }
+
+    /**
+     * Holds the reference to Tika so its classes are only loaded for input the fast path cannot decide.
+     */
+    private static class TikaDetection {
+        static String detect(byte[] data) {
+            CharsetMatch match = new CharsetDetector().setText(data).detect();
+            // no match when none of the encodings Tika knows fit, fall back to the encoding of a new document
+            String result = match == null ? StandardCharsets.UTF_8.name() : match.getName();
+            
+            return result;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Reads the text added to the end of a growing file, such as a log, without 
+ * reading what was already read again. The channel stays open between reads 
+ * and the decoder keeps any character split across the end of a write.
+ * <p>
+ * When the file becomes shorter than what was read, or is replaced by a new 
+ * file, reading starts again from the beginning of the file.
+ * 
+ * @author Mark Bernard
+ */
+public class FileFollower implements Closeable {
+    private static final int BUFFER_SIZE = 65536;
+    
+    private final File file;
+    private final Charset charset;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private FileChannel channel;
+    private Object fileKey;
+    private long position;
+    private boolean skipLineFeed;
+    private boolean restarted;
+
+    /**
+     * @param file The file to follow.
+     * @param charset The encoding of the file.
+     * @param position The number of bytes of the file already read, the first read 
+     * returns what was written after them. 0 to read the whole file.
+     * @throws IOException
+     */
+    public FileFollower(File file, Charset charset, long position) throws IOException {
+        this.file = file;
+        this.charset = charset;
+        decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        open();
+        this.position = position;
+    }
+
+    /**
+     * Read everything written to the file since the last read. Line breaks are
+     * changed to a single new line the same way as when the file is loaded.
+     * 
+     * @return The new text, empty if nothing was written.
+     * @throws IOException
+     */
+    public synchronized String read() throws IOException {
+        restarted = false;
+        try {
+            Object currentKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+            if (currentKey != null && !currentKey.equals(fileKey)) {
+                // the file was rotated, the new file is followed from its start
+                channel.close();
+                open();
+                restarted = true;
+            }
+        } catch (NoSuchFileException e) {
+            //rotated and not created again yet, the old file may still be written to
+        }
+        long size = channel.size();
+        if (size < position) {
+            // truncated in place
+            restart();
+        }
+        
+        StringBuilder result = new StringBuilder();
+        while (position < size) {
+            int read = channel.read(bytes, position);
+            if (read <= 0) {
+                break;
+            }
+            if (position == 0 && charset.equals(StandardCharsets.UTF_8)) {
+                skipByteOrderMark();
+            }
+            position += read;
+            bytes.flip();
+            while (decoder.decode(bytes, chars, false).isOverflow()) {
+                appendChars(result);
+            }
+            appendChars(result);
+            // the start of a character split by the end of the write stays for the next read
+            bytes.compact();
+        }
+        
+        return result.toString();
+    }
+
+    /**
+     * @return true if the last read started again from the beginning of the file.
+     */
+    public synchronized boolean isRestarted() {
+        return restarted;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        fileKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        restart();
+    }
+
+    private void restart() {
+        position = 0;
+        skipLineFeed = false;
+        bytes.clear();
+        decoder.reset();
+        restarted = true;
+    }
+
+    private void skipByteOrderMark() {
+        if (bytes.position() >= 3 && (bytes.get(0) & 0xFF) == 0xEF && (bytes.get(1) & 0xFF) == 0xBB && (bytes.get(2) & 0xFF) == 0xBF) {
+            bytes.flip();
+            bytes.position(3);
+            bytes.compact();
+        }
+    }
+
+    private void appendChars(StringBuilder result) {
+        chars.flip();
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    continue;
+                }
+            }
+            if (c == '\r') {
+                c = '\n';
+                skipLineFeed = true;
+            }
+            result.append(c);
+        }
+        chars.clear();
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tells documents when the file they were read from is changed by another 
+ * program. A single thread watches the directories of every open file, each
+ * directory is only registered once no matter how many of its files are open.
+ * <p>
+ * Listeners are called on the watching thread and are expected to pass the work
+ * to another thread. A file written in several steps can cause several calls.
+ * 
+ * @author Mark Bernard
+ */
+public class FileWatcher {
+    private static final Map<Path, WatchKey> directoryKeys = new HashMap<>();
+    private static final Map<Path, List<Runnable>> fileListeners = new HashMap<>();
+    private static WatchService watchService;
+
+    /**
+     * Start calling the listener when the file is created, replaced or modified.
+     * 
+     * @param file
+     * @param listener
+     */
+    public static synchronized void watch(File file, Runnable listener) {
+        Path path = file.toPath().toAbsolutePath();
+        Path directory = path.getParent();
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                Thread thread = new Thread(FileWatcher::run, "File Watcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            if (!directoryKeys.containsKey(directory)) {
+                // a file saved by replacing it shows up as a new file
+                directoryKeys.put(directory, directory.register(watchService, 
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+            }
+            fileListeners.computeIfAbsent(path, (key) -> new ArrayList<>()).add(listener);
+        } catch (IOException e) {
+            //the file is still edited, changes made by other programs are just not noticed
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stop calling the listener for the file.
+     * 
+     * @param file
+     * @param listener
+     */
+    public static synchronized void unwatch(File file, Runnable listener) {
+        Path path = file.toPath().toAbsolutePath();
+        List<Runnable> listeners = fileListeners.get(path);
+        if (listeners != null && listeners.remove(listener) && listeners.isEmpty()) {
+            fileListeners.remove(path);
+            Path directory = path.getParent();
+            boolean directoryUsed = false;
+            for (Path watched : fileListeners.keySet()) {
+                directoryUsed |= watched.getParent().equals(directory);
+            }
+            if (!directoryUsed) {
+                WatchKey key = directoryKeys.remove(directory);
+                if (key != null) {
+                    key.cancel();
+                }
+            }
+        }
+    }
+
+    private static void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = (Path)key.watchable();
+                List<Runnable> listeners = new ArrayList<>();
+                synchronized (FileWatcher.class) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // events were lost so every file in the directory may have changed
+                            for (Map.Entry<Path, List<Runnable>> entry : fileListeners.entrySet()) {
+                                if (entry.getKey().getParent().equals(directory)) {
+                                    addAll(listeners, entry.getValue());
+                                }
+                            }
+                        } else {
+                            List<Runnable> changed = fileListeners.get(directory.resolve((Path)event.context()));
+                            if (changed != null) {
+                                addAll(listeners, changed);
+                            }
+                        }
+                    }
+                    key.reset();
+                }
+                for (Runnable listener : listeners) {
+                    listener.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //the application is shutting down
+        }
+    }
+
+    private static void addAll(List<Runnable> listeners, List<Runnable> toAdd) {
+        for (Runnable listener : toAdd) {
+            if (!listeners.contains(listener)) {
+                listeners.add(listener);
+            }
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the lines that differ between two versions of a text using the Myers
+ * difference algorithm. Lines shared at the start and end of both versions are
+ * skipped before the algorithm runs, so two large versions with a few changes in
+ * one area are compared quickly.
+ * 
+ * @author Mark Bernard
+ */
+public class LineDiff {
+    // limits the memory used when the versions have little in common
+    private static final int MAX_DIFFERENCES = 4000;
+
+    /**
+     * Compare two versions of a text line by line. A line includes its line break.
+     * 
+     * @param original
+     * @param revised
+     * @return The changed line ranges in the order they appear.
+     */
+    public static List<Change> diff(String original, String revised) {
+        int[] originalStarts = lineStarts(original);
+        int[] revisedStarts = lineStarts(revised);
+        int originalLines = originalStarts.length - 1;
+        int revisedLines = revisedStarts.length - 1;
+        
+        int prefix = 0;
+        while (prefix < originalLines && prefix < revisedLines && 
+                lineEquals(original, originalStarts, prefix, revised, revisedStarts, prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < originalLines - prefix && suffix < revisedLines - prefix && 
+                lineEquals(original, originalStarts, originalLines - suffix - 1, revised, revisedStarts, revisedLines - suffix - 1)) {
+            suffix++;
+        }
+        
+        // lines are replaced by numbers so each comparison is a single int compare
+        Map<String, Integer> lineIds = new HashMap<>();
+        int[] a = lineIds(original, originalStarts, prefix, originalLines - suffix, lineIds);
+        int[] b = lineIds(revised, revisedStarts, prefix, revisedLines - suffix, lineIds);
+        List<Change> result = new ArrayList<>();
+        for (Change change : diff(a, b)) {
+            result.add(new Change(change.originalStart + prefix, change.originalEnd + prefix, 
+                    change.revisedStart + prefix, change.revisedEnd + prefix));
+        }
+        
+        return result;
+    }
+
+    /**
+     * Combine the changes two revisions made to a common original. Where both
+     * revisions changed the same lines differently both versions of the lines
+     * are kept between conflict markers.
+     * 
+     * @param base The original both revisions started from.
+     * @param mine
+     * @param theirs
+     * @return The merged text.
+     */
+    public static Merge merge(String base, String mine, String theirs) {
+        List<Change> mineChanges = diff(base, mine);
+        List<Change> theirChanges = diff(base, theirs);
+        int[] baseStarts = lineStarts(base);
+        int[] mineStarts = lineStarts(mine);
+        int[] theirStarts = lineStarts(theirs);
+        StringBuilder result = new StringBuilder();
+        int conflicts = 0;
+        int baseLine = 0;
+        // difference in line numbers between each revision and the base before the current group
+        int mineOffset = 0;
+        int theirOffset = 0;
+        int mineIndex = 0;
+        int theirIndex = 0;
+        while (mineIndex < mineChanges.size() || theirIndex < theirChanges.size()) {
+            // a group is the run of changes from both sides that overlap each other
+            boolean mineFirst = theirIndex == theirChanges.size() || (mineIndex < mineChanges.size() && 
+                    mineChanges.get(mineIndex).originalStart <= theirChanges.get(theirIndex).originalStart);
+            int groupStart = (mineFirst ? mineChanges.get(mineIndex) : theirChanges.get(theirIndex)).originalStart;
+            int groupEnd = groupStart;
+            int mineGroupEnd = mineIndex;
+            int theirGroupEnd = theirIndex;
+            boolean extended = true;
+            while (extended) {
+                extended = false;
+                if (mineGroupEnd < mineChanges.size() && mineChanges.get(mineGroupEnd).originalStart <= groupEnd) {
+                    groupEnd = Math.max(groupEnd, mineChanges.get(mineGroupEnd++).originalEnd);
+                    extended = true;
+                }
+                if (theirGroupEnd < theirChanges.size() && theirChanges.get(theirGroupEnd).originalStart <= groupEnd) {
+                    groupEnd = Math.max(groupEnd, theirChanges.get(theirGroupEnd++).originalEnd);
+                    extended = true;
+                }
+            }
+            result.append(base, baseStarts[baseLine], baseStarts[groupStart]);
+            
+            int mineGroupOffset = mineOffset;
+            for (int i=mineIndex;i<mineGroupEnd;i++) {
+                mineGroupOffset += changeOffset(mineChanges.get(i));
+            }
+            int theirGroupOffset = theirOffset;
+            for (int i=theirIndex;i<theirGroupEnd;i++) {
+                theirGroupOffset += changeOffset(theirChanges.get(i));
+            }
+            String mineText = mine.substring(mineStarts[groupStart + mineOffset], mineStarts[groupEnd + mineGroupOffset]);
+            String theirText = theirs.substring(theirStarts[groupStart + theirOffset], theirStarts[groupEnd + theirGroupOffset]);
+            if (mineIndex == mineGroupEnd) {
+                result.append(theirText);
+            } else if (theirIndex == theirGroupEnd || mineText.equals(theirText)) {
+                result.append(mineText);
+            } else {
+                conflicts++;
+                appendConflictPart(result, "<<<<<<< document\n", mineText);
+                appendConflictPart(result, "=======\n", theirText);
+                result.append(">>>>>>> file\n");
+            }
+            
+            baseLine = groupEnd;
+            mineOffset = mineGroupOffset;
+            theirOffset = theirGroupOffset;
+            mineIndex = mineGroupEnd;
+            theirIndex = theirGroupEnd;
+        }
+        result.append(base, baseStarts[baseLine], base.length());
+        
+        return new Merge(result.toString(), conflicts);
+    }
+
+    private static int changeOffset(Change change) {
+        return (change.revisedEnd - change.revisedStart) - (change.originalEnd - change.originalStart);
+    }
+
+    private static void appendConflictPart(StringBuilder result, String marker, String text) {
+        if (result.length() > 0 && result.charAt(result.length() - 1) != '\n') {
+            result.append('\n');
+        }
+        result.append(marker).append(text);
+        if (!text.isEmpty() && !text.endsWith("\n")) {
+            result.append('\n');
+        }
+    }
+
+    /**
+     * @param text
+     * @return The offset of every line start followed by the length of the text.
+     */
+    public static int[] lineStarts(String text) {
+        int count = 1;
+        for (int i=0;i<text.length();i++) {
+            if (text.charAt(i) == '\n' && i + 1 < text.length()) {
+                count++;
+            }
+        }
+        if (text.isEmpty()) {
+            count = 0;
+        }
+        int[] result = new int[count + 1];
+        int line = 1;
+        for (int i=0;i<text.length() && line < count;i++) {
+            if (text.charAt(i) == '\n') {
+                result[line++] = i + 1;
+            }
+        }
+        result[count] = text.length();
+        
+        return result;
+    }
+
+    private static boolean lineEquals(String a, int[] aStarts, int aLine, String b, int[] bStarts, int bLine) {
+        int length = aStarts[aLine + 1] - aStarts[aLine];
+        
+        return length == bStarts[bLine + 1] - bStarts[bLine] && 
+                a.regionMatches(aStarts[aLine], b, bStarts[bLine], length);
+    }
+
+    private static int[] lineIds(String text, int[] starts, int from, int to, Map<String, Integer> lineIds) {
+        int[] result = new int[to - from];
+        for (int i=from;i<to;i++) {
+            String line = text.substring(starts[i], starts[i + 1]);
+            Integer id = lineIds.get(line);
+            if (id == null) {
+                id = lineIds.size();
+                lineIds.put(line, id);
+            }
+            result[i - from] = id;
+        }
+        
+        return result;
+    }
+
+    private static List<Change> diff(int[] a, int[] b) {
+        int n = a.length;
+        int m = b.length;
+        List<Change> result = new ArrayList<>();
+        if (n == 0 && m == 0) {
+            return result;
+        }
+        int max = Math.min(n + m, MAX_DIFFERENCES);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        // the furthest point on each diagonal before each step, kept to walk the path back
+        List<int[]> trace = new ArrayList<>();
+        boolean found = false;
+        for (int d=0;d<=max && !found;d++) {
+            int[] saved = new int[2 * d + 1];
+            System.arraycopy(v, offset - d, saved, 0, saved.length);
+            trace.add(saved);
+            for (int k=-d;k<=d && !found;k+=2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a[x] == b[y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                found = x >= n && y >= m;
+            }
+        }
+        if (!found) {
+            result.add(new Change(0, n, 0, m));
+            return result;
+        }
+        
+        // walk back from the end collecting the runs of matching lines
+        List<int[]> matches = new ArrayList<>();
+        int x = n;
+        int y = m;
+        for (int d=trace.size()-1;d>=0;d--) {
+            int[] saved = trace.get(d);
+            int k = x - y;
+            int previousK;
+            if (d == 0) {
+                previousK = 0;
+            } else if (k == -d || (k != d && saved[k - 1 + d] < saved[k + 1 + d])) {
+                previousK = k + 1;
+            } else {
+                previousK = k - 1;
+            }
+            int previousX = d == 0 ? 0 : saved[previousK + d];
+            int previousY = previousX - previousK;
+            int snakeStart = d == 0 ? 0 : (previousK == k + 1 ? previousX : previousX + 1);
+            if (x > snakeStart) {
+                matches.add(new int[] {snakeStart, snakeStart - k, x - snakeStart});
+            }
+            x = previousX;
+            y = previousY;
+        }
+        Collections.reverse(matches);
+        
+        int originalPosition = 0;
+        int revisedPosition = 0;
+        for (int[] match : matches) {
+            if (match[0] > originalPosition || match[1] > revisedPosition) {
+                result.add(new Change(originalPosition, match[0], revisedPosition, match[1]));
+            }
+            originalPosition = match[0] + match[2];
+            revisedPosition = match[1] + match[2];
+        }
+        if (originalPosition < n || revisedPosition < m) {
+            result.add(new Change(originalPosition, n, revisedPosition, m));
+        }
+        
+        return result;
+    }
+
+    /**
+     * The result of combining two revisions of a text.
+     */
+    public static class Merge {
+        private final String text;
+        private final int conflicts;
+
+        Merge(String text, int conflicts) {
+            this.text = text;
+            this.conflicts = conflicts;
+        }
+
+        /**
+         * @return The merged text.
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return The number of places where both revisions changed the same lines differently.
+         */
+        public int getConflicts() {
+            return conflicts;
+        }
+    }
+
+    /**
+     * A range of lines in the original text replaced by a range of lines in the 
+     * revised text. Either range may be empty.
+     */
+    public static class Change {
+        private final int originalStart;
+        private final int originalEnd;
+        private final int revisedStart;
+        private final int revisedEnd;
+
+        Change(int originalStart, int originalEnd, int revisedStart, int revisedEnd) {
+            this.originalStart = originalStart;
+            this.originalEnd = originalEnd;
+            this.revisedStart = revisedStart;
+            this.revisedEnd = revisedEnd;
+        }
+
+        /**
+         * @return The first changed line in the original text.
+         */
+        public int getOriginalStart() {
+            return originalStart;
+        }
+
+        /**
+         * @return The line after the last changed line in the original text.
+         */
+        public int getOriginalEnd() {
+            return originalEnd;
+        }
+
+        /**
+         * @return The first changed line in the revised text.
+         */
+        public int getRevisedStart() {
+            return revisedStart;
+        }
+
+        /**
+         * @return The line after the last changed line in the revised text.
+         */
+        public int getRevisedEnd() {
+            return revisedEnd;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the line break that ended each line of a file, while the document 
+ * itself only holds \n. A file that uses one kind of break throughout only 
+ * stores that kind. Once a second kind is seen every break is kept in a packed
+ * map of two bits per line.
+ * 
+ * @author Mark Bernard
+ */
+public class LineEndings {
+    /**
+     * A single line feed, used on Unix and macOS.
+     */
+    public static final int LF = 0;
+    /**
+     * A carriage return followed by a line feed, used on Windows.
+     */
+    public static final int CRLF = 1;
+    /**
+     * A single carriage return, used on classic Mac OS.
+     */
+    public static final int CR = 2;
+
+    private static final int BITS_PER_LINE = 2;
+    private static final int LINES_PER_WORD = 64 / BITS_PER_LINE;
+    private static final long TYPE_MASK = (1L << BITS_PER_LINE) - 1;
+
+    private int uniformType;
+    private long[] map;
+    private int count;
+
+    /**
+     * Line endings for a new document, which uses line feeds.
+     */
+    public LineEndings() {
+        this(LF);
+    }
+
+    /**
+     * @param type The kind of break used by every line.
+     */
+    public LineEndings(int type) {
+        uniformType = type;
+    }
+
+    /**
+     * Replace each CRLF and lone CR with \n, the only break the document holds. 
+     * The kind of break a line is saved with is kept here, not in the text.
+     * 
+     * @param text
+     * @return The text with only \n breaks.
+     */
+    public static String normalize(String text) {
+        String result = text;
+        if (text.indexOf('\r') >= 0) {
+            result = text.replace("\r\n", "\n").replace('\r', '\n');
+        }
+        
+        return result;
+    }
+
+    /**
+     * @return A copy that is not affected by later edits.
+     */
+    public LineEndings copy() {
+        LineEndings result = new LineEndings(uniformType);
+        result.count = count;
+        if (map != null) {
+            result.map = Arrays.copyOf(map, (count + LINES_PER_WORD - 1) / LINES_PER_WORD + 1);
+        }
+        
+        return result;
+    }
+
+    /**
+     * @return true if every line ends with the same kind of break.
+     */
+    public boolean isUniform() {
+        return map == null;
+    }
+
+    /**
+     * @param line Zero based line number.
+     * @return The kind of break at the end of the line. Lines past the last 
+     * recorded break use the kind of that break.
+     */
+    public int get(int line) {
+        if (map == null || count == 0) {
+            return uniformType;
+        }
+        
+        return getMapped(Math.min(line, count - 1));
+    }
+
+    /**
+     * Record the break at the end of the next line as the file is read.
+     * 
+     * @param type
+     */
+    public void add(int type) {
+        if (map == null && (type == uniformType || count == 0)) {
+            uniformType = type;
+            count++;
+            return;
+        }
+        if (map == null) {
+            // the first break of a second kind, every break so far is of the first kind
+            map = new long[Math.max(16, count / LINES_PER_WORD * 2)];
+            fill(0, count, uniformType);
+        }
+        ensureCapacity(count + 1);
+        setMapped(count++, type);
+    }
+
+    /**
+     * Breaks were inserted before the break of a line. They take the kind of 
+     * that break, so a document with one kind of break keeps it.
+     * 
+     * @param line Zero based line the text was inserted into.
+     * @param lines Number of breaks inserted.
+     */
+    public void insertLines(int line, int lines) {
+        if (map != null) {
+            ensureCapacity(count + lines);
+            int type = get(line);
+            int start = Math.min(line, count);
+            for (int i=count-1;i>=start;i--) {
+                setMapped(i + lines, getMapped(i));
+            }
+            fill(start, start + lines, type);
+        }
+        count += lines;
+    }
+
+    /**
+     * Breaks were removed along with the text between them. The first line now 
+     * ends with the break that followed the removed text.
+     * 
+     * @param line Zero based line the removed text started on.
+     * @param lines Number of breaks removed.
+     */
+    public void removeLines(int line, int lines) {
+        int removed = Math.max(0, Math.min(lines, count - line));
+        if (map != null) {
+            for (int i=line+removed;i<count;i++) {
+                setMapped(i - removed, getMapped(i));
+            }
+        }
+        count -= removed;
+    }
+
+    private void fill(int start, int end, int type) {
+        for (int i=start;i<end;i++) {
+            setMapped(i, type);
+        }
+    }
+
+    private void ensureCapacity(int lines) {
+        int words = (lines + LINES_PER_WORD - 1) / LINES_PER_WORD;
+        if (words > map.length) {
+            map = Arrays.copyOf(map, Math.max(words, map.length * 2));
+        }
+    }
+
+    private int getMapped(int line) {
+        return (int)(map[line / LINES_PER_WORD] >>> (line % LINES_PER_WORD * BITS_PER_LINE) & TYPE_MASK);
+    }
+
+    private void setMapped(int line, int type) {
+        int shift = line % LINES_PER_WORD * BITS_PER_LINE;
+        int word = line / LINES_PER_WORD;
+        map[word] = map[word] & ~(TYPE_MASK << shift) | ((long)type << shift);
+    }
+}
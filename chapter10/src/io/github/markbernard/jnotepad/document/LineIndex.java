@@ -0,0 +1,216 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/**
+ * Keeps the start offset of every line in a document. The offsets are held in an
+ * int array with a gap at the most recently edited line. Entries before the gap
+ * are stored as absolute offsets and entries after the gap are stored as the 
+ * distance from the end of the document, so an edit only touches the lines it
+ * adds or removes no matter how many lines follow it.
+ * <p>
+ * The kind of line break that ended each line in the file is kept up to date 
+ * with the same edits.
+ * 
+ * @author Mark Bernard
+ */
+public class LineIndex implements DocumentListener {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] starts;
+    private int gapStart;
+    private int gapEnd;
+    private int documentLength;
+    private Segment segment;
+    private LineEndings lineEndings;
+
+    /**
+     * Create an index for an empty document.
+     */
+    public LineIndex() {
+        starts = new int[INITIAL_CAPACITY];
+        starts[0] = 0;
+        gapStart = 1;
+        gapEnd = starts.length;
+        documentLength = 0;
+        segment = new Segment();
+        segment.setPartialReturn(true);
+        lineEndings = new LineEndings();
+    }
+
+    /**
+     * @return The kind of line break that ends each line.
+     */
+    public LineEndings getLineEndings() {
+        return lineEndings;
+    }
+
+    /**
+     * Use the line breaks read from a file. They must match the lines currently in the document.
+     * 
+     * @param lineEndings
+     */
+    public void setLineEndings(LineEndings lineEndings) {
+        this.lineEndings = lineEndings;
+    }
+
+    /**
+     * @return The number of lines in the document. An empty document has one line.
+     */
+    public int getLineCount() {
+        return starts.length - (gapEnd - gapStart);
+    }
+
+    /**
+     * @param line Zero based line number.
+     * @return The offset of the first character on the line.
+     */
+    public int getLineStart(int line) {
+        if (line < gapStart) {
+            return starts[line];
+        }
+        return documentLength - starts[line + gapEnd - gapStart];
+    }
+
+    /**
+     * @param line Zero based line number.
+     * @return The offset just past the last character of the line, not including the line break.
+     */
+    public int getLineEnd(int line) {
+        if (line + 1 < getLineCount()) {
+            return getLineStart(line + 1) - 1;
+        }
+        return documentLength;
+    }
+
+    /**
+     * @param offset
+     * @return The zero based line containing the offset.
+     */
+    public int getLineOfOffset(int offset) {
+        int low = 0;
+        int high = getLineCount() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (getLineStart(mid) <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Discard the current contents and index the whole document.
+     * 
+     * @param document
+     */
+    public void rebuild(Document document) {
+        gapStart = 1;
+        gapEnd = starts.length;
+        documentLength = 0;
+        lineEndings = new LineEndings(lineEndings.get(0));
+        insertText(document, 0, document.getLength());
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        insertText(e.getDocument(), e.getOffset(), e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        int offset = e.getOffset();
+        int length = e.getLength();
+        int firstLine = getLineOfOffset(offset);
+        int lastLine = getLineOfOffset(offset + length);
+        moveGap(firstLine + 1);
+        // the line starts that were inside the removed text simply join the gap
+        gapEnd += lastLine - firstLine;
+        documentLength -= length;
+        if (lastLine > firstLine) {
+            lineEndings.removeLines(firstLine, lastLine - firstLine);
+        }
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {}
+
+    private void insertText(Document document, int offset, int length) {
+        int line = getLineOfOffset(offset);
+        moveGap(line + 1);
+        int firstStart = gapStart;
+        documentLength += length;
+        int position = offset;
+        int end = offset + length;
+        try {
+            while (position < end) {
+                document.getText(position, end - position, segment);
+                char[] array = segment.array;
+                int last = segment.offset + segment.count;
+                for (int i=segment.offset;i<last;i++) {
+                    if (array[i] == '\n') {
+                        addLineStart(position + (i - segment.offset) + 1);
+                    }
+                }
+                position += segment.count;
+            }
+        } catch (BadLocationException e) {
+            //should not happen as the range comes from the document event.
+            e.printStackTrace();
+        }
+        if (gapStart > firstStart) {
+            lineEndings.insertLines(line, gapStart - firstStart);
+        }
+    }
+
+    private void addLineStart(int offset) {
+        if (gapStart == gapEnd) {
+            int[] newStarts = new int[starts.length * 2];
+            int tail = starts.length - gapEnd;
+            System.arraycopy(starts, 0, newStarts, 0, gapStart);
+            System.arraycopy(starts, gapEnd, newStarts, newStarts.length - tail, tail);
+            gapEnd = newStarts.length - tail;
+            starts = newStarts;
+        }
+        starts[gapStart++] = offset;
+    }
+
+    private void moveGap(int line) {
+        while (gapStart > line) {
+            gapStart--;
+            gapEnd--;
+            starts[gapEnd] = documentLength - starts[gapStart];
+        }
+        while (gapStart < line) {
+            starts[gapStart] = documentLength - starts[gapEnd];
+            gapStart++;
+            gapEnd++;
+        }
+    }
+}
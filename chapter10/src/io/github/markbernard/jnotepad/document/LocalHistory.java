@@ -0,0 +1,572 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps the saved versions of every file so earlier versions can be compared
+ * with the document or restored.
+ * <p>
+ * A version is stored as a list of chunks. Chunk boundaries are chosen from the
+ * content using a rolling hash, so an edit only changes the chunks around it
+ * and the rest are shared with the earlier versions. Each chunk is stored once 
+ * under its SHA-256 hash and compressed, using the chunk it replaced in the 
+ * previous version as the compression dictionary. The store is limited in 
+ * size and the versions used least recently are removed first.
+ * <p>
+ * The store is kept in the user's home directory:
+ * <pre>
+ * history/files/&lt;hash of path&gt;/&lt;time&gt;.version
+ * history/chunks/&lt;first two hash digits&gt;/&lt;hash&gt;.chunk
+ * </pre>
+ * 
+ * @author Mark Bernard
+ */
+public class LocalHistory {
+    private static final long MAX_HISTORY_SIZE = 512L * 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 4096;
+    private static final int MAX_CHUNK_SIZE = 65536;
+    // a boundary is found on average every 16K after the minimum size, the high bits of
+    // the rolling hash are used since they depend on more of the preceding bytes
+    private static final long BOUNDARY_MASK = ((1L << 14) - 1) << 50;
+    // only the last 32K of a dictionary are used by the compressor
+    private static final int DICTIONARY_SIZE = 32768;
+    private static final int VERSION_MAGIC = 0x4A4E5631;
+    private static final byte PLAIN_CHUNK = 0;
+    private static final byte DELTA_CHUNK = 1;
+    private static final int HASH_LENGTH = 32;
+    private static final String VERSION_SUFFIX = ".version";
+    private static final String CHUNK_SUFFIX = ".chunk";
+    private static final long[] GEAR = createGear();
+
+    private static long[] createGear() {
+        // a fixed seed keeps the boundaries the same from one run to the next
+        Random random = new Random(0x4A4E6F74L);
+        long[] result = new long[256];
+        for (int i=0;i<result.length;i++) {
+            result[i] = random.nextLong();
+        }
+        
+        return result;
+    }
+
+    /**
+     * @return The directory holding the history of every file.
+     */
+    public static File getHistoryDirectory() {
+        return new File(new File(System.getProperty("user.home"), ".jnotepad"), "history");
+    }
+
+    /**
+     * Add the current content of a file to its history. Only the chunks not 
+     * already in the store are written.
+     * 
+     * @param file
+     * @return The version holding the current content.
+     * @throws IOException
+     */
+    public static synchronized Version record(File file) throws IOException {
+        List<Version> versions = getVersions(file);
+        Version previous = versions.isEmpty() ? null : versions.get(0);
+        List<byte[]> hashes = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        MessageDigest digest = createDigest();
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(MAX_CHUNK_SIZE);
+        long size = 0;
+        
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            long hash = 0;
+            while (channel.read(buffer) > -1) {
+                buffer.flip();
+                byte[] array = buffer.array();
+                int start = 0;
+                int end = buffer.limit();
+                for (int i=0;i<end;i++) {
+                    hash = (hash << 1) + GEAR[array[i] & 0xFF];
+                    int chunkLength = chunk.size() + i - start + 1;
+                    if ((chunkLength >= MIN_CHUNK_SIZE && (hash & BOUNDARY_MASK) == 0) || chunkLength == MAX_CHUNK_SIZE) {
+                        chunk.write(array, start, i - start + 1);
+                        storeChunk(chunk, digest, previous, hashes.size(), hashes, lengths);
+                        start = i + 1;
+                        hash = 0;
+                    }
+                }
+                chunk.write(array, start, end - start);
+                size += end;
+                buffer.clear();
+            }
+            if (chunk.size() > 0) {
+                storeChunk(chunk, digest, previous, hashes.size(), hashes, lengths);
+            }
+        } finally {
+            channel.close();
+        }
+        
+        Version result = previous;
+        if (previous != null && previous.hasChunks(hashes)) {
+            // saved without changes so the latest version only counts as used
+            previous.touch();
+        } else {
+            result = writeVersion(file, size, hashes, lengths);
+        }
+        prune();
+        
+        return result;
+    }
+
+    /**
+     * @param file
+     * @return Every version of the file with the most recent first.
+     */
+    public static synchronized List<Version> getVersions(File file) {
+        List<Version> result = new ArrayList<>();
+        File[] versionFiles = getVersionDirectory(file).listFiles((dir, name) -> name.endsWith(VERSION_SUFFIX));
+        if (versionFiles != null) {
+            for (File versionFile : versionFiles) {
+                try {
+                    result.add(readVersion(versionFile));
+                } catch (IOException e) {
+                    //a damaged version is left out of the list
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong(Version::getTime).reversed());
+        
+        return result;
+    }
+
+    private static void storeChunk(ByteArrayOutputStream chunk, MessageDigest digest, Version previous, int index, 
+            List<byte[]> hashes, List<Integer> lengths) throws IOException {
+        byte[] bytes = chunk.toByteArray();
+        chunk.reset();
+        byte[] hash = digest.digest(bytes);
+        hashes.add(hash);
+        lengths.add(bytes.length);
+        File chunkFile = getChunkFile(hash);
+        if (chunkFile.exists()) {
+            return;
+        }
+        
+        // the chunk in the same place in the previous version is usually the one this chunk replaced
+        byte[] dictionaryHash = null;
+        byte[] dictionary = null;
+        if (previous != null && index < previous.hashes.length) {
+            File dictionaryFile = getChunkFile(previous.hashes[index]);
+            if (isPlainChunk(dictionaryFile)) {
+                dictionaryHash = previous.hashes[index];
+                dictionary = readChunk(dictionaryFile);
+                if (dictionary.length > DICTIONARY_SIZE) {
+                    dictionary = Arrays.copyOfRange(dictionary, dictionary.length - DICTIONARY_SIZE, dictionary.length);
+                }
+            }
+        }
+        Deflater deflater = new Deflater();
+        Files.createDirectories(chunkFile.getParentFile().toPath());
+        Path temp = Files.createTempFile(chunkFile.getParentFile().toPath(), "chunk", ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())));
+            try {
+                if (dictionaryHash != null) {
+                    out.writeByte(DELTA_CHUNK);
+                    out.write(dictionaryHash);
+                    deflater.setDictionary(dictionary);
+                } else {
+                    out.writeByte(PLAIN_CHUNK);
+                }
+                out.writeInt(bytes.length);
+                deflater.setInput(bytes);
+                deflater.finish();
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } finally {
+                out.close();
+            }
+            moveInto(temp, chunkFile);
+        } finally {
+            deflater.end();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static boolean isPlainChunk(File chunkFile) throws IOException {
+        boolean result = false;
+        if (chunkFile.exists()) {
+            InputStream in = new FileInputStream(chunkFile);
+            try {
+                result = in.read() == PLAIN_CHUNK;
+            } finally {
+                in.close();
+            }
+        }
+        
+        return result;
+    }
+
+    private static byte[] readChunk(File chunkFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(chunkFile)));
+        Inflater inflater = new Inflater();
+        try {
+            byte type = in.readByte();
+            byte[] dictionaryHash = null;
+            if (type == DELTA_CHUNK) {
+                dictionaryHash = new byte[HASH_LENGTH];
+                in.readFully(dictionaryHash);
+            }
+            byte[] result = new byte[in.readInt()];
+            byte[] buffer = new byte[8192];
+            int position = 0;
+            while (position < result.length) {
+                if (inflater.needsInput()) {
+                    int read = in.read(buffer);
+                    if (read == -1) {
+                        throw new IOException("Chunk is incomplete: " + chunkFile);
+                    }
+                    inflater.setInput(buffer, 0, read);
+                }
+                int inflated = inflater.inflate(result, position, result.length - position);
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    byte[] dictionary = readChunk(getChunkFile(dictionaryHash));
+                    inflater.setDictionary(dictionary, Math.max(0, dictionary.length - DICTIONARY_SIZE), 
+                            Math.min(dictionary.length, DICTIONARY_SIZE));
+                }
+                position += inflated;
+            }
+            
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("Chunk is damaged: " + chunkFile, e);
+        } finally {
+            inflater.end();
+            in.close();
+        }
+    }
+
+    private static Version writeVersion(File file, long size, List<byte[]> hashes, List<Integer> lengths) throws IOException {
+        File directory = getVersionDirectory(file);
+        Files.createDirectories(directory.toPath());
+        long time = System.currentTimeMillis();
+        File versionFile = new File(directory, time + VERSION_SUFFIX);
+        while (versionFile.exists()) {
+            versionFile = new File(directory, ++time + VERSION_SUFFIX);
+        }
+        Path temp = Files.createTempFile(directory.toPath(), "version", ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())));
+            try {
+                out.writeInt(VERSION_MAGIC);
+                out.writeUTF(file.getAbsolutePath());
+                out.writeLong(time);
+                out.writeLong(size);
+                out.writeInt(hashes.size());
+                for (int i=0;i<hashes.size();i++) {
+                    out.write(hashes.get(i));
+                    out.writeInt(lengths.get(i));
+                }
+            } finally {
+                out.close();
+            }
+            moveInto(temp, versionFile);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        
+        return new Version(versionFile, file, time, size, hashes.toArray(new byte[hashes.size()][]));
+    }
+
+    private static Version readVersion(File versionFile) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(versionFile)));
+        try {
+            if (in.readInt() != VERSION_MAGIC) {
+                throw new IOException("Not a version: " + versionFile);
+            }
+            String path = in.readUTF();
+            long time = in.readLong();
+            long size = in.readLong();
+            int count = in.readInt();
+            byte[][] hashes = new byte[count][HASH_LENGTH];
+            for (int i=0;i<count;i++) {
+                in.readFully(hashes[i]);
+                in.readInt();
+            }
+            
+            return new Version(versionFile, new File(path), time, size, hashes);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Remove the least recently used versions until the store fits in its size
+     * limit, then delete the chunks no remaining version needs.
+     */
+    private static void prune() throws IOException {
+        File root = getHistoryDirectory();
+        List<File> versionFiles = new ArrayList<>();
+        File[] fileDirectories = new File(root, "files").listFiles();
+        if (fileDirectories != null) {
+            for (File directory : fileDirectories) {
+                File[] files = directory.listFiles((dir, name) -> name.endsWith(VERSION_SUFFIX));
+                if (files != null) {
+                    versionFiles.addAll(Arrays.asList(files));
+                }
+            }
+        }
+        long total = directorySize(root);
+        if (total <= MAX_HISTORY_SIZE) {
+            return;
+        }
+        versionFiles.sort(Comparator.comparingLong(File::lastModified));
+        // the most recently used version is always kept
+        while (total > MAX_HISTORY_SIZE && versionFiles.size() > 1) {
+            // each pass removes about a quarter of the versions so the store is not walked once per version
+            int remove = Math.max(1, versionFiles.size() / 4);
+            for (int i=0;i<remove;i++) {
+                versionFiles.remove(0).delete();
+            }
+            deleteUnusedChunks(root, versionFiles);
+            total = directorySize(root);
+        }
+    }
+
+    private static void deleteUnusedChunks(File root, List<File> versionFiles) throws IOException {
+        Set<String> used = new HashSet<>();
+        for (File versionFile : versionFiles) {
+            for (byte[] hash : readVersion(versionFile).hashes) {
+                String name = toHex(hash);
+                if (used.add(name)) {
+                    // a compressed chunk needs its dictionary chunk to be read
+                    byte[] dictionaryHash = readDictionaryHash(getChunkFile(hash));
+                    if (dictionaryHash != null) {
+                        used.add(toHex(dictionaryHash));
+                    }
+                }
+            }
+        }
+        File[] chunkDirectories = new File(root, "chunks").listFiles();
+        if (chunkDirectories != null) {
+            for (File directory : chunkDirectories) {
+                File[] chunkFiles = directory.listFiles();
+                if (chunkFiles != null) {
+                    for (File chunkFile : chunkFiles) {
+                        String name = chunkFile.getName();
+                        if (name.endsWith(CHUNK_SUFFIX) && !used.contains(name.substring(0, name.length() - CHUNK_SUFFIX.length()))) {
+                            chunkFile.delete();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[] readDictionaryHash(File chunkFile) throws IOException {
+        byte[] result = null;
+        if (chunkFile.exists()) {
+            DataInputStream in = new DataInputStream(new FileInputStream(chunkFile));
+            try {
+                if (in.readByte() == DELTA_CHUNK) {
+                    result = new byte[HASH_LENGTH];
+                    in.readFully(result);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        
+        return result;
+    }
+
+    private static long directorySize(File directory) {
+        long result = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                result += file.isDirectory() ? directorySize(file) : file.length();
+            }
+        }
+        
+        return result;
+    }
+
+    private static void moveInto(Path temp, File destination) throws IOException {
+        try {
+            Files.move(temp, destination.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static File getVersionDirectory(File file) {
+        byte[] pathHash = createDigest().digest(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        
+        return new File(new File(getHistoryDirectory(), "files"), toHex(pathHash).substring(0, 16));
+    }
+
+    private static File getChunkFile(byte[] hash) {
+        String name = toHex(hash);
+        
+        return new File(new File(new File(getHistoryDirectory(), "chunks"), name.substring(0, 2)), name + CHUNK_SUFFIX);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //should not occur as every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        
+        return result.toString();
+    }
+
+    /**
+     * One saved version of a file.
+     */
+    public static class Version {
+        private final File versionFile;
+        private final File file;
+        private final long time;
+        private final long size;
+        private final byte[][] hashes;
+
+        Version(File versionFile, File file, long time, long size, byte[][] hashes) {
+            this.versionFile = versionFile;
+            this.file = file;
+            this.time = time;
+            this.size = size;
+            this.hashes = hashes;
+        }
+
+        /**
+         * @return The file this is a version of.
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return When the version was saved.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return The size of the file when it was saved.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Write the bytes of the file as they were saved.
+         * 
+         * @param out
+         * @throws IOException
+         */
+        public void write(OutputStream out) throws IOException {
+            synchronized (LocalHistory.class) {
+                for (byte[] hash : hashes) {
+                    out.write(readChunk(getChunkFile(hash)));
+                }
+                touch();
+            }
+        }
+
+        /**
+         * Decode the version the same way a file is loaded into a document. A 
+         * version of a gzip file is kept as the compressed bytes of the file and
+         * is uncompressed first.
+         * 
+         * @param encoding
+         * @return The text of the version.
+         * @throws IOException
+         */
+        public String readText(String encoding) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            write(out);
+            String result = new String(Compression.decompress(out.toByteArray()), Charset.isSupported(encoding) ? 
+                    Charset.forName(encoding) : StandardCharsets.UTF_8);
+            if (!result.isEmpty() && result.charAt(0) == '\uFEFF') {
+                result = result.substring(1);
+            }
+            
+            return result.replace("\r\n", "\n").replace('\r', '\n');
+        }
+
+        private boolean hasChunks(List<byte[]> otherHashes) {
+            boolean result = hashes.length == otherHashes.size();
+            for (int i=0;i<hashes.length && result;i++) {
+                result = Arrays.equals(hashes[i], otherHashes.get(i));
+            }
+            
+            return result;
+        }
+
+        /**
+         * Mark the version as used so it is among the last to be pruned.
+         */
+        private void touch() {
+            versionFile.setLastModified(System.currentTimeMillis());
+        }
+    }
+}
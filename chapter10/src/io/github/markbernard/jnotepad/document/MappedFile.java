@@ -0,0 +1,166 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read only access to a file of any size through memory mapped windows. Only
+ * a few windows are kept mapped at a time so the heap and the address space 
+ * used stay small regardless of how large the file is.
+ * 
+ * @author Mark Bernard
+ */
+public class MappedFile {
+    private static final int WINDOW_SHIFT = 26;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+    private static final int MAX_WINDOWS = 4;
+
+    private File file;
+    private FileChannel channel;
+    private long size;
+    private Map<Long, MappedByteBuffer> windows;
+
+    /**
+     * @param file The file to map.
+     * @throws IOException
+     */
+    public MappedFile(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        size = channel.size();
+        windows = new LinkedHashMap<Long, MappedByteBuffer>(MAX_WINDOWS, 0.75f, true) {
+            private static final long serialVersionUID = -4461946839651006707L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+                return size() > MAX_WINDOWS;
+            }
+        };
+    }
+
+    /**
+     * @return The file being viewed.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The size of the file in bytes when it was opened.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @param position
+     * @return The byte at the provided position.
+     * @throws IOException
+     */
+    public synchronized byte get(long position) throws IOException {
+        return getWindow(position >>> WINDOW_SHIFT).get((int)(position & (WINDOW_SIZE - 1)));
+    }
+
+    /**
+     * Copy bytes from the file into the provided array. Fewer bytes than requested
+     * are copied when the end of the file is reached.
+     * 
+     * @param position Position in the file to start reading.
+     * @param destination
+     * @param offset Position in the destination to start writing.
+     * @param length Maximum number of bytes to copy.
+     * @return The number of bytes copied.
+     * @throws IOException
+     */
+    public synchronized int read(long position, byte[] destination, int offset, int length) throws IOException {
+        int count = (int)Math.max(0, Math.min(length, size - position));
+        int copied = 0;
+        while (copied < count) {
+            long current = position + copied;
+            MappedByteBuffer window = getWindow(current >>> WINDOW_SHIFT);
+            int windowOffset = (int)(current & (WINDOW_SIZE - 1));
+            int part = Math.min(count - copied, window.limit() - windowOffset);
+            ByteBuffer view = window.duplicate();
+            view.position(windowOffset);
+            view.get(destination, offset + copied, part);
+            copied += part;
+        }
+        
+        return count;
+    }
+
+    /**
+     * Find the next occurrence of a byte.
+     * 
+     * @param position Position to start searching from.
+     * @param value The byte to find.
+     * @param limit Position to stop searching at.
+     * @return The position of the byte or -1 if it was not found before the limit.
+     * @throws IOException
+     */
+    public synchronized long indexOf(long position, byte value, long limit) throws IOException {
+        long end = Math.min(limit, size);
+        long current = position;
+        while (current < end) {
+            MappedByteBuffer window = getWindow(current >>> WINDOW_SHIFT);
+            int windowOffset = (int)(current & (WINDOW_SIZE - 1));
+            int windowEnd = (int)Math.min(window.limit(), windowOffset + (end - current));
+            for (int i=windowOffset;i<windowEnd;i++) {
+                if (window.get(i) == value) {
+                    return current + (i - windowOffset);
+                }
+            }
+            current += windowEnd - windowOffset;
+        }
+        
+        return -1;
+    }
+
+    /**
+     * Release the file. Mapped windows are unmapped when they are garbage collected.
+     */
+    public synchronized void close() {
+        windows.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //cannot do anything
+        }
+    }
+
+    private MappedByteBuffer getWindow(long windowIndex) throws IOException {
+        MappedByteBuffer window = windows.get(windowIndex);
+        if (window == null) {
+            long start = windowIndex << WINDOW_SHIFT;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+            windows.put(windowIndex, window);
+        }
+        
+        return window;
+    }
+}
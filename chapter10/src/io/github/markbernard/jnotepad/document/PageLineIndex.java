@@ -0,0 +1,200 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.io.IOException;
+
+/**
+ * Line index for a memory mapped file. Rather than the start of every line only 
+ * the start of every {@value #LINES_PER_PAGE}th line is kept, so the index of a 
+ * multi-gigabyte file stays small. The index is built on a background thread and 
+ * can be used while it is still growing.
+ * 
+ * @author Mark Bernard
+ */
+public class PageLineIndex implements Runnable {
+    /**
+     * Number of lines between two recorded line starts.
+     */
+    public static final int LINES_PER_PAGE = 256;
+    private static final int SCAN_BLOCK_SIZE = 1 << 20;
+
+    private MappedFile mappedFile;
+    private Runnable progressListener;
+    private long[] pageStarts;
+    private int pageCount;
+    private volatile long lineCount;
+    private volatile long scannedBytes;
+    private volatile boolean complete;
+    private volatile boolean cancelled;
+
+    /**
+     * @param mappedFile The file to index.
+     * @param progressListener Called from the indexing thread as the index grows.
+     */
+    public PageLineIndex(MappedFile mappedFile, Runnable progressListener) {
+        this.mappedFile = mappedFile;
+        this.progressListener = progressListener;
+        pageStarts = new long[1024];
+        pageStarts[0] = 0;
+        pageCount = 1;
+        lineCount = 1;
+    }
+
+    /**
+     * Start indexing on a background thread.
+     */
+    public void start() {
+        Thread thread = new Thread(this, "Index " + mappedFile.getFile().getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop indexing.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run() {
+        long size = mappedFile.getSize();
+        byte[] block = new byte[SCAN_BLOCK_SIZE];
+        long position = 0;
+        long lines = 1;
+        try {
+            while (position < size && !cancelled) {
+                int read = mappedFile.read(position, block, 0, block.length);
+                for (int i=0;i<read;i++) {
+                    if (block[i] == '\n') {
+                        if (lines % LINES_PER_PAGE == 0) {
+                            addPage(position + i + 1);
+                        }
+                        lines++;
+                    }
+                }
+                position += read;
+                lineCount = lines;
+                scannedBytes = position;
+                progressListener.run();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        complete = !cancelled;
+        progressListener.run();
+    }
+
+    /**
+     * @return The number of lines found so far.
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return True when the whole file has been indexed.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return The number of bytes indexed so far.
+     */
+    public long getScannedBytes() {
+        return scannedBytes;
+    }
+
+    /**
+     * Find the byte offset of a line by starting at the closest recorded page
+     * and scanning forward.
+     * 
+     * @param line Zero based line number.
+     * @return The byte offset of the start of the line or -1 if the line has not been indexed yet.
+     * @throws IOException
+     */
+    public long getLineOffset(long line) throws IOException {
+        if (line >= lineCount) {
+            return -1;
+        }
+        long position = getPageStart((int)(line / LINES_PER_PAGE));
+        long remaining = line % LINES_PER_PAGE;
+        while (remaining > 0 && position >= 0) {
+            long newLine = mappedFile.indexOf(position, (byte)'\n', mappedFile.getSize());
+            position = newLine < 0 ? -1 : newLine + 1;
+            remaining--;
+        }
+        
+        return position;
+    }
+
+    /**
+     * Find the line containing a byte offset.
+     * 
+     * @param offset
+     * @return The zero based line containing the offset.
+     * @throws IOException
+     */
+    public long getLineOfOffset(long offset) throws IOException {
+        int page = findPage(offset);
+        long line = (long)page * LINES_PER_PAGE;
+        long position = getPageStart(page);
+        while (position <= offset) {
+            long newLine = mappedFile.indexOf(position, (byte)'\n', offset);
+            if (newLine < 0) {
+                break;
+            }
+            position = newLine + 1;
+            line++;
+        }
+        
+        return line;
+    }
+
+    private synchronized long getPageStart(int page) {
+        return pageStarts[Math.min(page, pageCount - 1)];
+    }
+
+    private synchronized int findPage(long offset) {
+        int low = 0;
+        int high = pageCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (pageStarts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        
+        return low;
+    }
+
+    private synchronized void addPage(long offset) {
+        if (pageCount == pageStarts.length) {
+            long[] newPageStarts = new long[pageStarts.length * 2];
+            System.arraycopy(pageStarts, 0, newPageStarts, 0, pageCount);
+            pageStarts = newPageStarts;
+        }
+        pageStarts[pageCount++] = offset;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import javax.swing.text.AttributeSet;
+
+/**
+ * New character runs for a set of paragraphs, collected so they can all be 
+ * applied with {@link BulkStyledDocument#setParagraphRuns(ParagraphRuns)} in a 
+ * single change. The runs of a paragraph are added in order directly after it.
+ * 
+ * @author Mark Bernard
+ */
+public class ParagraphRuns {
+    private static final int INITIAL_PARAGRAPHS = 64;
+    private static final int INITIAL_RUNS = 256;
+
+    private int[] paragraphs;
+    private int[] firstRuns;
+    private int paragraphCount;
+    private int[] runEnds;
+    private AttributeSet[] runStyles;
+    private int runCount;
+
+    /**
+     * Create an empty set of changes.
+     */
+    public ParagraphRuns() {
+        paragraphs = new int[INITIAL_PARAGRAPHS];
+        firstRuns = new int[INITIAL_PARAGRAPHS];
+        runEnds = new int[INITIAL_RUNS];
+        runStyles = new AttributeSet[INITIAL_RUNS];
+    }
+
+    /**
+     * Start the runs of a paragraph. Paragraphs must be added in document order.
+     * 
+     * @param paragraph The index of the paragraph in the default root element.
+     */
+    public void addParagraph(int paragraph) {
+        if (paragraphCount == paragraphs.length) {
+            int[] newParagraphs = new int[paragraphCount * 2];
+            System.arraycopy(paragraphs, 0, newParagraphs, 0, paragraphCount);
+            paragraphs = newParagraphs;
+            int[] newFirstRuns = new int[paragraphCount * 2];
+            System.arraycopy(firstRuns, 0, newFirstRuns, 0, paragraphCount);
+            firstRuns = newFirstRuns;
+        }
+        paragraphs[paragraphCount] = paragraph;
+        firstRuns[paragraphCount] = runCount;
+        paragraphCount++;
+    }
+
+    /**
+     * Add a run to the last paragraph. The last run of a paragraph always extends 
+     * to the end of the paragraph whatever end it is given.
+     * 
+     * @param end The document offset the run ends at.
+     * @param style
+     */
+    public void addRun(int end, AttributeSet style) {
+        if (runCount == runEnds.length) {
+            int[] newEnds = new int[runCount * 2];
+            System.arraycopy(runEnds, 0, newEnds, 0, runCount);
+            runEnds = newEnds;
+            AttributeSet[] newStyles = new AttributeSet[runCount * 2];
+            System.arraycopy(runStyles, 0, newStyles, 0, runCount);
+            runStyles = newStyles;
+        }
+        runEnds[runCount] = end;
+        runStyles[runCount] = style;
+        runCount++;
+    }
+
+    /**
+     * @return The number of paragraphs with new runs.
+     */
+    public int size() {
+        return paragraphCount;
+    }
+
+    /**
+     * Remove all paragraphs so the set can be filled again.
+     */
+    public void clear() {
+        paragraphCount = 0;
+        runCount = 0;
+    }
+
+    int getParagraph(int index) {
+        return paragraphs[index];
+    }
+
+    int getFirstRun(int index) {
+        return firstRuns[index];
+    }
+
+    int getRunCount(int index) {
+        return (index + 1 < paragraphCount ? firstRuns[index + 1] : runCount) - firstRuns[index];
+    }
+
+    int getRunEnd(int run) {
+        return runEnds[run];
+    }
+
+    AttributeSet getRunStyle(int run) {
+        return runStyles[run];
+    }
+}
@@ -0,0 +1,744 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Document content stored as a piece table. Text is never moved once it has been
+ * stored. Large inserts, such as the contents of a file being loaded, are kept in
+ * immutable buffers outside the heap and small edits are appended to an add buffer. 
+ * The document is described by pieces that point into those buffers, so an edit 
+ * only changes the pieces and undo simply puts the old pieces back.
+ * <p>
+ * The pieces are held in a balanced tree that is never changed once built, an 
+ * edit copies the O(log n) nodes on the path to the pieces it changes. Finding 
+ * the piece for an offset and editing both take O(log n) for n pieces, and a 
+ * snapshot only keeps the root of the tree.
+ * <p>
+ * Positions are kept the way GapContent keeps them. Positions after the last 
+ * edit are stored relative to the end of the document so an edit does not 
+ * need to update them, and positions before it are stored from the start. An 
+ * edit only converts the positions between it and the previous edit, so edits 
+ * close together cost O(log m) for m positions however large the document is. 
+ * The positions are held in order in an array with a gap where the last one 
+ * was added, so the positions created while styling a range of lines are 
+ * added without moving the rest of the array.
+ * 
+ * @author Mark Bernard
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+    private static final int ADD_BLOCK_SIZE = 16384;
+    private static final int COMPACT_CHUNK_SIZE = 65536;
+    private static final int INITIAL_MARK_CAPACITY = 16;
+
+    private PieceNode root;
+    private int length;
+
+    private char[] addBlock;
+    private TextBuffer addBuffer;
+    private int addBlockUsed;
+
+    private Mark[] marks;
+    private int markGapStart;
+    private int markGapLength;
+    /** The offset of the last edit, marks after it are stored with markShift added. */
+    private int markSplit;
+    /** Integer.MAX_VALUE less the length, so a stored mark never overflows. */
+    private int markShift;
+    private int unusedMarks;
+    private ReferenceQueue<StickyPosition> queue;
+
+    /**
+     * Create an empty content containing only the implied break at the end of the document.
+     */
+    public PieceTableContent() {
+        newAddBlock();
+        marks = new Mark[INITIAL_MARK_CAPACITY];
+        markGapLength = marks.length;
+        queue = new ReferenceQueue<>();
+        insertPieces(0, createPieces("\n"));
+        markShift = Integer.MAX_VALUE - length;
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        purgeMarks();
+        StickyPosition position = new StickyPosition();
+        Mark mark = new Mark(position, offset < markSplit ? offset : offset + markShift, queue);
+        position.mark = mark;
+        insertMark(findFirstValue(mark.value), mark);
+
+        return position;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where > length || where < 0) {
+            throw new BadLocationException("Invalid insert", length);
+        }
+        insertPieces(where, createPieces(str));
+        updateMarksForInsert(where, str.length());
+
+        return new InsertUndo(where, str.length());
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        if (where < 0 || where + nitems >= length) {
+            throw new BadLocationException("Invalid remove", length + 1);
+        }
+        List<UndoPosition> positions = getPositionsInRange(where, nitems);
+        Piece[] removed = removePieces(where, nitems);
+        updateMarksForRemove(where, nitems);
+
+        return new RemoveUndo(where, removed, positions);
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        Segment segment = new Segment();
+        getChars(where, len, segment);
+
+        return new String(segment.array, segment.offset, segment.count);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length) {
+            throw new BadLocationException("Invalid location", length);
+        }
+        if (len == 0) {
+            txt.array = new char[0];
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+        PieceNode node = root;
+        int pieceOffset = where;
+        while (true) {
+            int leftLength = PieceNode.length(node.left);
+            if (pieceOffset < leftLength) {
+                node = node.left;
+            } else if (pieceOffset < leftLength + node.piece.length) {
+                pieceOffset -= leftLength;
+                break;
+            } else {
+                pieceOffset -= leftLength + node.piece.length;
+                node = node.right;
+            }
+        }
+        Piece piece = node.piece;
+        int available = piece.length - pieceOffset;
+        char[] array = piece.buffer.array();
+        if (array != null && (len <= available || txt.isPartialReturn())) {
+            // the requested text is stored contiguously so no copy is required
+            txt.array = array;
+            txt.offset = piece.start + pieceOffset;
+            txt.count = Math.min(len, available);
+        } else if (txt.isPartialReturn()) {
+            int count = Math.min(len, available);
+            char[] result = new char[count];
+            piece.buffer.getChars(piece.start + pieceOffset, count, result, 0);
+            txt.array = result;
+            txt.offset = 0;
+            txt.count = count;
+        } else {
+            char[] result = new char[len];
+            copyChars(where, len, result, 0);
+            txt.array = result;
+            txt.offset = 0;
+            txt.count = len;
+        }
+    }
+
+    /**
+     * Copy a range of the content into the provided array.
+     * 
+     * @param where Starting offset in the content.
+     * @param len Number of characters to copy.
+     * @param destination Array to receive the characters.
+     * @param destinationOffset Position in the destination to start writing.
+     */
+    public void copyChars(int where, int len, char[] destination, int destinationOffset) {
+        PieceNode.copyChars(root, where, len, destination, destinationOffset);
+    }
+
+    /**
+     * Capture the current text without copying it. Stored text and the nodes of 
+     * the piece tree never change so the snapshot only keeps the current root, 
+     * and it can be read from any thread while the document continues to be edited.
+     * 
+     * @return The text of the document, not including the implied break at the end.
+     */
+    public Snapshot createSnapshot() {
+        return new Snapshot(root, length - 1);
+    }
+
+    /**
+     * @return The number of pieces currently describing the document.
+     */
+    public int getPieceCount() {
+        return PieceNode.count(root);
+    }
+
+    private Piece[] createPieces(String str) {
+        int strLength = str.length();
+        List<Piece> result = new ArrayList<>(2);
+        if (strLength >= ADD_BLOCK_SIZE) {
+            // large inserts are moved out of the heap in chunks so each chunk can use its own encoding
+            char[] chunk = new char[Math.min(strLength, COMPACT_CHUNK_SIZE)];
+            for (int start=0;start<strLength;start+=chunk.length) {
+                int count = Math.min(chunk.length, strLength - start);
+                str.getChars(start, start + count, chunk, 0);
+                result.add(new Piece(TextBuffer.compact(chunk, 0, count), 0, count));
+            }
+        } else {
+            int copied = 0;
+            while (copied < strLength) {
+                if (addBlockUsed == addBlock.length) {
+                    newAddBlock();
+                }
+                int count = Math.min(strLength - copied, addBlock.length - addBlockUsed);
+                str.getChars(copied, copied + count, addBlock, addBlockUsed);
+                result.add(new Piece(addBuffer, addBlockUsed, count));
+                addBlockUsed += count;
+                copied += count;
+            }
+        }
+
+        return result.toArray(new Piece[result.size()]);
+    }
+
+    private void newAddBlock() {
+        addBlock = new char[ADD_BLOCK_SIZE];
+        addBuffer = new TextBuffer.CharTextBuffer(addBlock);
+        addBlockUsed = 0;
+    }
+
+    private void insertPieces(int where, Piece[] newPieces) {
+        if (newPieces.length == 0) {
+            return;
+        }
+        // a piece the insert lands in is split in two
+        PieceNode[] parts = PieceNode.split(root, where);
+        PieceNode left = parts[0];
+        Piece previous = PieceNode.lastPiece(left);
+        if (newPieces.length == 1 && previous != null && previous.isFollowedBy(newPieces[0])) {
+            // typing extends the previous piece instead of adding a new one
+            left = PieceNode.replaceLast(left, new Piece(previous.buffer, previous.start, previous.length + newPieces[0].length));
+        } else {
+            for (Piece piece : newPieces) {
+                left = PieceNode.merge(left, new PieceNode(null, piece, null, ThreadLocalRandom.current().nextInt()));
+            }
+        }
+        root = PieceNode.merge(left, parts[1]);
+        length = PieceNode.length(root);
+    }
+
+    private Piece[] removePieces(int where, int nitems) {
+        PieceNode[] after = PieceNode.split(root, where + nitems);
+        PieceNode[] parts = PieceNode.split(after[0], where);
+        List<Piece> removed = new ArrayList<>();
+        PieceNode.collect(parts[1], removed);
+        root = PieceNode.merge(parts[0], after[1]);
+        length = PieceNode.length(root);
+
+        return removed.toArray(new Piece[removed.size()]);
+    }
+
+    private int getMarkCount() {
+        return marks.length - markGapLength;
+    }
+
+    private Mark getMark(int index) {
+        return marks[index < markGapStart ? index : index + markGapLength];
+    }
+
+    private int getOffset(Mark mark) {
+        return mark.value < markSplit + markShift ? mark.value : mark.value - markShift;
+    }
+
+    /**
+     * @return The index of the first mark at or after the offset.
+     */
+    private int findFirstMark(int offset) {
+        int low = 0;
+        int high = getMarkCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getOffset(getMark(mid)) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * @return The index of the first mark with a stored value at or after the value.
+     */
+    private int findFirstValue(int value) {
+        int low = 0;
+        int high = getMarkCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getMark(mid).value < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private void insertMark(int index, Mark mark) {
+        if (markGapLength == 0) {
+            Mark[] newMarks = new Mark[marks.length * 2];
+            System.arraycopy(marks, 0, newMarks, 0, markGapStart);
+            int after = marks.length - markGapStart;
+            System.arraycopy(marks, markGapStart, newMarks, newMarks.length - after, after);
+            markGapLength = newMarks.length - marks.length;
+            marks = newMarks;
+        }
+        moveMarkGap(index);
+        marks[markGapStart++] = mark;
+        markGapLength--;
+    }
+
+    private void moveMarkGap(int index) {
+        if (index < markGapStart) {
+            System.arraycopy(marks, index, marks, index + markGapLength, markGapStart - index);
+        } else if (index > markGapStart) {
+            System.arraycopy(marks, markGapStart + markGapLength, marks, markGapStart, index - markGapStart);
+        }
+        markGapStart = index;
+    }
+
+    /**
+     * Move the split between marks stored from the start and marks stored from 
+     * the end to an edit. Only the marks between the old and new split are changed.
+     * 
+     * @param where The offset of the edit.
+     * @param first The lowest offset of a mark that is moved by the edit.
+     */
+    private void moveMarkSplit(int where, int first) {
+        int split = findFirstValue(markSplit + markShift);
+        int index = findFirstMark(first);
+        if (index < split) {
+            shiftMarks(index, split, markShift);
+        } else {
+            shiftMarks(split, index, -markShift);
+        }
+        markSplit = where;
+    }
+
+    private void shiftMarks(int start, int end, int delta) {
+        for (int i=start;i<Math.min(end, markGapStart);i++) {
+            marks[i].value += delta;
+        }
+        for (int i=Math.max(start, markGapStart) + markGapLength;i<end + markGapLength;i++) {
+            marks[i].value += delta;
+        }
+    }
+
+    private void updateMarksForInsert(int where, int insertLength) {
+        // a position at 0 always stays at the start of the document
+        moveMarkSplit(where, where == 0 ? 1 : where);
+        // the marks after the insert move with the end of the document
+        markSplit += insertLength;
+        markShift -= insertLength;
+    }
+
+    private void updateMarksForRemove(int where, int removeLength) {
+        moveMarkSplit(where, where);
+        int end = where + removeLength;
+        int count = getMarkCount();
+        for (int i=findFirstMark(where);i<count;i++) {
+            Mark mark = getMark(i);
+            if (getOffset(mark) >= end) {
+                break;
+            }
+            // marks in the removed text end up where it was
+            mark.value = end + markShift;
+        }
+        markShift += removeLength;
+    }
+
+    private List<UndoPosition> getPositionsInRange(int where, int rangeLength) {
+        List<UndoPosition> result = new ArrayList<>();
+        int end = where + rangeLength;
+        int count = getMarkCount();
+        for (int i=findFirstMark(where);i<count && getOffset(getMark(i)) <= end;i++) {
+            Mark mark = getMark(i);
+            result.add(new UndoPosition(mark, getOffset(mark)));
+        }
+
+        return result;
+    }
+
+    private void restorePositions(List<UndoPosition> positions, int where, int rangeLength) {
+        if (positions.isEmpty()) {
+            return;
+        }
+        // every mark in the range is stored from the end while it is put back
+        moveMarkSplit(where, where);
+        int first = findFirstMark(where);
+        int last = first;
+        int count = getMarkCount();
+        while (last < count && getOffset(getMark(last)) <= where + rangeLength) {
+            last++;
+        }
+        for (UndoPosition position : positions) {
+            if (position.mark.get() != null) {
+                position.mark.value = position.offset + markShift;
+            }
+        }
+        // restored marks may have moved past other marks that were sitting at the same offset
+        moveMarkGap(last);
+        Arrays.sort(marks, first, last, (a, b) -> Integer.compare(a.value, b.value));
+    }
+
+    /**
+     * Remove the marks of positions that are no longer used once they make up 
+     * half of the marks, so the cost is spread over the positions created.
+     */
+    private void purgeMarks() {
+        while (queue.poll() != null) {
+            unusedMarks++;
+        }
+        int count = getMarkCount();
+        if (unusedMarks > INITIAL_MARK_CAPACITY && unusedMarks > count / 2) {
+            Mark[] newMarks = new Mark[Math.max(INITIAL_MARK_CAPACITY, (count - unusedMarks) * 2)];
+            int used = 0;
+            for (int i=0;i<count;i++) {
+                Mark mark = getMark(i);
+                if (mark.get() != null) {
+                    if (used == newMarks.length) {
+                        newMarks = Arrays.copyOf(newMarks, used * 2);
+                    }
+                    newMarks[used++] = mark;
+                }
+            }
+            marks = newMarks;
+            markGapStart = used;
+            markGapLength = newMarks.length - used;
+            unusedMarks = 0;
+        }
+    }
+
+    private static class Piece {
+        final TextBuffer buffer;
+        final int start;
+        final int length;
+
+        Piece(TextBuffer buffer, int start, int length) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+        }
+
+        boolean isFollowedBy(Piece next) {
+            return buffer == next.buffer && start + length == next.start;
+        }
+    }
+
+    /**
+     * A node of the piece tree, a treap ordered by document position that keeps 
+     * the number of characters and pieces below it. Nodes are never changed, an 
+     * edit builds new nodes on the path to the change and shares the rest.
+     */
+    private static class PieceNode {
+        final PieceNode left;
+        final Piece piece;
+        final PieceNode right;
+        final int priority;
+        final int length;
+        final int count;
+
+        PieceNode(PieceNode left, Piece piece, PieceNode right, int priority) {
+            this.left = left;
+            this.piece = piece;
+            this.right = right;
+            this.priority = priority;
+            length = length(left) + piece.length + length(right);
+            count = count(left) + 1 + count(right);
+        }
+
+        static int length(PieceNode node) {
+            return node == null ? 0 : node.length;
+        }
+
+        static int count(PieceNode node) {
+            return node == null ? 0 : node.count;
+        }
+
+        /**
+         * @return The tree of the characters before the offset and the tree of the 
+         * characters from the offset on. A piece crossing the offset is split.
+         */
+        static PieceNode[] split(PieceNode node, int offset) {
+            if (node == null) {
+                return new PieceNode[2];
+            }
+            int leftLength = length(node.left);
+            int pieceEnd = leftLength + node.piece.length;
+            PieceNode[] result;
+            if (offset <= leftLength) {
+                result = split(node.left, offset);
+                result[1] = new PieceNode(result[1], node.piece, node.right, node.priority);
+            } else if (offset >= pieceEnd) {
+                result = split(node.right, offset - pieceEnd);
+                result[0] = new PieceNode(node.left, node.piece, result[0], node.priority);
+            } else {
+                Piece piece = node.piece;
+                int cut = offset - leftLength;
+                result = new PieceNode[] {
+                        new PieceNode(node.left, new Piece(piece.buffer, piece.start, cut), null, node.priority),
+                        new PieceNode(null, new Piece(piece.buffer, piece.start + cut, piece.length - cut), node.right, node.priority)};
+            }
+
+            return result;
+        }
+
+        /**
+         * @return A tree holding the pieces of the first tree followed by those of the second.
+         */
+        static PieceNode merge(PieceNode first, PieceNode second) {
+            if (first == null) {
+                return second;
+            }
+            if (second == null) {
+                return first;
+            }
+            return first.priority > second.priority ? 
+                    new PieceNode(first.left, first.piece, merge(first.right, second), first.priority) : 
+                    new PieceNode(merge(first, second.left), second.piece, second.right, second.priority);
+        }
+
+        static Piece lastPiece(PieceNode node) {
+            if (node == null) {
+                return null;
+            }
+            while (node.right != null) {
+                node = node.right;
+            }
+            return node.piece;
+        }
+
+        static PieceNode replaceLast(PieceNode node, Piece piece) {
+            return node.right == null ? new PieceNode(node.left, piece, null, node.priority) : 
+                    new PieceNode(node.left, node.piece, replaceLast(node.right, piece), node.priority);
+        }
+
+        static void collect(PieceNode node, List<Piece> pieces) {
+            while (node != null) {
+                collect(node.left, pieces);
+                pieces.add(node.piece);
+                node = node.right;
+            }
+        }
+
+        /**
+         * Copy a range of the characters below a node, relative to the first character of the node.
+         */
+        static void copyChars(PieceNode node, int where, int len, char[] destination, int destinationOffset) {
+            while (len > 0) {
+                int leftLength = length(node.left);
+                if (where < leftLength) {
+                    int count = Math.min(len, leftLength - where);
+                    copyChars(node.left, where, count, destination, destinationOffset);
+                    destinationOffset += count;
+                    len -= count;
+                    where = leftLength;
+                }
+                int pieceOffset = where - leftLength;
+                if (len > 0 && pieceOffset < node.piece.length) {
+                    int count = Math.min(len, node.piece.length - pieceOffset);
+                    node.piece.buffer.getChars(node.piece.start + pieceOffset, count, destination, destinationOffset);
+                    destinationOffset += count;
+                    len -= count;
+                    pieceOffset += count;
+                }
+                where = pieceOffset - node.piece.length;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * The text of the document at the time the snapshot was taken.
+     */
+    public static class Snapshot {
+        private final PieceNode root;
+        private final int length;
+
+        private Snapshot(PieceNode root, int length) {
+            this.root = root;
+            this.length = length;
+        }
+
+        /**
+         * @return The number of characters in the snapshot.
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Copy a range of the snapshot into the provided array.
+         * 
+         * @param where Starting offset in the snapshot.
+         * @param len Number of characters to copy.
+         * @param destination Array to receive the characters.
+         * @param destinationOffset Position in the destination to start writing.
+         */
+        public void getChars(int where, int len, char[] destination, int destinationOffset) {
+            PieceNode.copyChars(root, where, len, destination, destinationOffset);
+        }
+    }
+
+    /**
+     * A position's offset as stored by the content, relative to the start or the 
+     * end of the document depending on which side of the last edit it is.
+     */
+    private class Mark extends WeakReference<StickyPosition> {
+        int value;
+
+        Mark(StickyPosition position, int value, ReferenceQueue<StickyPosition> queue) {
+            super(position, queue);
+            this.value = value;
+        }
+
+        int getOffset() {
+            return PieceTableContent.this.getOffset(this);
+        }
+    }
+
+    private static class StickyPosition implements Position {
+        Mark mark;
+
+        @Override
+        public int getOffset() {
+            return mark.getOffset();
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    private static class UndoPosition {
+        final Mark mark;
+        final int offset;
+
+        UndoPosition(Mark mark, int offset) {
+            this.mark = mark;
+            this.offset = offset;
+        }
+    }
+
+    private class InsertUndo extends AbstractUndoableEdit {
+        private static final long serialVersionUID = 3398420211011573516L;
+        private int where;
+        private int insertLength;
+        private Piece[] removed;
+        private List<UndoPosition> positions;
+
+        InsertUndo(int where, int insertLength) {
+            this.where = where;
+            this.insertLength = insertLength;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            positions = getPositionsInRange(where, insertLength);
+            removed = removePieces(where, insertLength);
+            updateMarksForRemove(where, insertLength);
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            insertPieces(where, removed);
+            updateMarksForInsert(where, insertLength);
+            restorePositions(positions, where, insertLength);
+            removed = null;
+            positions = null;
+        }
+    }
+
+    private class RemoveUndo extends AbstractUndoableEdit {
+        private static final long serialVersionUID = -5183620713346262651L;
+        private int where;
+        private int removeLength;
+        private Piece[] removed;
+        private List<UndoPosition> positions;
+
+        RemoveUndo(int where, Piece[] removed, List<UndoPosition> positions) {
+            this.where = where;
+            this.removed = removed;
+            this.positions = positions;
+            for (Piece piece : removed) {
+                removeLength += piece.length;
+            }
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            insertPieces(where, removed);
+            updateMarksForInsert(where, removeLength);
+            restorePositions(positions, where, removeLength);
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            positions = getPositionsInRange(where, removeLength);
+            removed = removePieces(where, removeLength);
+            updateMarksForRemove(where, removeLength);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.swing.text.AttributeSet;
+import javax.swing.text.DefaultStyledDocument.ElementSpec;
+
+/**
+ * Collects styled text so it can be placed in a document with a single insert.
+ * The text is kept in one character array and neighbouring runs with the
+ * same style are merged, so a parser can append one token at a time without
+ * creating an element or firing an event for each of them.
+ * 
+ * @author Mark Bernard
+ */
+public class StyledBatch {
+    private static final int INITIAL_CAPACITY = 16384;
+    private static final int INITIAL_RUNS = 1024;
+
+    private char[] text;
+    private int length;
+    private int[] runEnds;
+    private AttributeSet[] runStyles;
+    private int runCount;
+    private int flushLength;
+    private Consumer<StyledBatch> flushHandler;
+
+    /**
+     * Create an empty batch.
+     */
+    public StyledBatch() {
+        text = new char[INITIAL_CAPACITY];
+        runEnds = new int[INITIAL_RUNS];
+        runStyles = new AttributeSet[INITIAL_RUNS];
+    }
+
+    /**
+     * @param content
+     * @param style
+     */
+    public void append(String content, AttributeSet style) {
+        int contentLength = content.length();
+        ensureCapacity(contentLength);
+        content.getChars(0, contentLength, text, length);
+        addRun(contentLength, style);
+    }
+
+    /**
+     * @param content
+     * @param offset
+     * @param contentLength
+     * @param style
+     */
+    public void append(char[] content, int offset, int contentLength, AttributeSet style) {
+        ensureCapacity(contentLength);
+        System.arraycopy(content, offset, text, length, contentLength);
+        addRun(contentLength, style);
+    }
+
+    /**
+     * Have the batch passed to the handler each time it holds at least the provided 
+     * number of characters. The handler is expected to insert and clear the batch.
+     * 
+     * @param flushLength
+     * @param flushHandler
+     */
+    public void setFlushHandler(int flushLength, Consumer<StyledBatch> flushHandler) {
+        this.flushLength = flushLength;
+        this.flushHandler = flushHandler;
+    }
+
+    /**
+     * @param flushLength The number of characters that causes the batch to be flushed.
+     */
+    public void setFlushLength(int flushLength) {
+        this.flushLength = flushLength;
+    }
+
+    /**
+     * @return The number of characters in the batch.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Remove all text from the batch so it can be filled again.
+     */
+    public void clear() {
+        length = 0;
+        runCount = 0;
+    }
+
+    /**
+     * Convert the batch to element specs. Each line break closes the current 
+     * paragraph and opens a new one with the provided attributes, which is the 
+     * same structure DefaultStyledDocument builds when the text is inserted 
+     * one string at a time.
+     * 
+     * @param paragraphAttributes Attributes for the paragraphs started by the batch.
+     * @param afterLineBreak true if the text is inserted directly after a line break.
+     * @return The specs to pass to DefaultStyledDocument.insert.
+     */
+    public ElementSpec[] toElementSpecs(AttributeSet paragraphAttributes, boolean afterLineBreak) {
+        List<ElementSpec> specs = new ArrayList<>(runCount + runCount / 2 + 2);
+        ElementSpec lastStart = null;
+        if (afterLineBreak) {
+            // the inserted text starts a paragraph of its own rather than extending the previous one
+            specs.add(new ElementSpec(paragraphAttributes, ElementSpec.EndTagType));
+            lastStart = new ElementSpec(paragraphAttributes, ElementSpec.StartTagType);
+            specs.add(lastStart);
+        }
+        int start = 0;
+        for (int run = 0; run < runCount; run++) {
+            int end = runEnds[run];
+            AttributeSet style = runStyles[run];
+            for (int i = start; i < end; i++) {
+                if (text[i] == '\n') {
+                    specs.add(createContentSpec(style, start, i + 1));
+                    specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+                    lastStart = new ElementSpec(paragraphAttributes, ElementSpec.StartTagType);
+                    specs.add(lastStart);
+                    start = i + 1;
+                }
+            }
+            if (start < end) {
+                specs.add(createContentSpec(style, start, end));
+                start = end;
+            }
+        }
+        if (lastStart != null) {
+            // after a line break the last new paragraph joins the one that already follows the insert,
+            // otherwise the paragraph being inserted into is split and its remainder joins the last new paragraph
+            lastStart.setDirection(afterLineBreak ? ElementSpec.JoinNextDirection : ElementSpec.JoinFractureDirection);
+        }
+        
+        return specs.toArray(new ElementSpec[specs.size()]);
+    }
+
+    private ElementSpec createContentSpec(AttributeSet style, int start, int end) {
+        // the spec copies the whole array it is given so each one gets only its own text
+        return new ElementSpec(style, ElementSpec.ContentType, Arrays.copyOfRange(text, start, end), 0, end - start);
+    }
+
+    private void addRun(int contentLength, AttributeSet style) {
+        if (contentLength == 0) {
+            return;
+        }
+        length += contentLength;
+        if (runCount > 0 && runStyles[runCount - 1] == style) {
+            runEnds[runCount - 1] = length;
+        } else {
+            if (runCount == runEnds.length) {
+                int[] newEnds = new int[runCount * 2];
+                System.arraycopy(runEnds, 0, newEnds, 0, runCount);
+                runEnds = newEnds;
+                AttributeSet[] newStyles = new AttributeSet[runCount * 2];
+                System.arraycopy(runStyles, 0, newStyles, 0, runCount);
+                runStyles = newStyles;
+            }
+            runEnds[runCount] = length;
+            runStyles[runCount] = style;
+            runCount++;
+        }
+        if (flushHandler != null && length >= flushLength) {
+            flushHandler.accept(this);
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > text.length) {
+            char[] newText = new char[Math.max(text.length * 2, length + extra)];
+            System.arraycopy(text, 0, newText, 0, length);
+            text = newText;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.document;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * Immutable storage for a run of characters referenced by the pieces of a 
+ * {@link PieceTableContent}. Small edits are kept in heap char arrays while 
+ * large blocks of text are stored outside the heap, using a single byte per 
+ * character when the block only contains ISO-8859-1 characters.
+ * 
+ * @author Mark Bernard
+ */
+abstract class TextBuffer {
+    /**
+     * Store a block of characters outside the heap using the smallest encoding that can hold them.
+     * 
+     * @param chars
+     * @param offset
+     * @param length
+     * @return The new buffer.
+     */
+    static TextBuffer compact(char[] chars, int offset, int length) {
+        int end = offset + length;
+        boolean latin1 = true;
+        for (int i=offset;i<end && latin1;i++) {
+            latin1 = chars[i] <= 0xFF;
+        }
+        
+        return latin1 ? new Latin1TextBuffer(chars, offset, length) : new WideTextBuffer(chars, offset, length);
+    }
+
+    /**
+     * @return The backing array if the characters are stored in a heap char array, null otherwise.
+     */
+    char[] array() {
+        return null;
+    }
+
+    /**
+     * Copy characters out of the buffer.
+     * 
+     * @param start Position in the buffer.
+     * @param length Number of characters to copy.
+     * @param destination
+     * @param destinationOffset
+     */
+    abstract void getChars(int start, int length, char[] destination, int destinationOffset);
+
+    /**
+     * Characters held in a heap array. Used for the add buffer of the piece table.
+     */
+    static class CharTextBuffer extends TextBuffer {
+        private final char[] chars;
+
+        CharTextBuffer(char[] chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        char[] array() {
+            return chars;
+        }
+
+        @Override
+        void getChars(int start, int length, char[] destination, int destinationOffset) {
+            System.arraycopy(chars, start, destination, destinationOffset, length);
+        }
+    }
+
+    /**
+     * ISO-8859-1 characters stored one byte per character in a direct buffer.
+     */
+    static class Latin1TextBuffer extends TextBuffer {
+        private final ByteBuffer bytes;
+
+        Latin1TextBuffer(char[] chars, int offset, int length) {
+            bytes = ByteBuffer.allocateDirect(length);
+            for (int i=0;i<length;i++) {
+                bytes.put(i, (byte)chars[offset + i]);
+            }
+        }
+
+        @Override
+        void getChars(int start, int length, char[] destination, int destinationOffset) {
+            for (int i=0;i<length;i++) {
+                destination[destinationOffset + i] = (char)(bytes.get(start + i) & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Characters outside of ISO-8859-1 stored two bytes per character in a direct buffer.
+     */
+    static class WideTextBuffer extends TextBuffer {
+        private final CharBuffer chars;
+
+        WideTextBuffer(char[] source, int offset, int length) {
+            chars = ByteBuffer.allocateDirect(length * 2).asCharBuffer();
+            chars.put(source, offset, length);
+        }
+
+        @Override
+        void getChars(int start, int length, char[] destination, int destinationOffset) {
+            CharBuffer view = chars.duplicate();
+            view.position(start);
+            view.get(destination, destinationOffset, length);
+        }
+    }
+}
@@ -21,22 +21,24 @@ package io.github.markbernard.jnotepad.parser;
 
 import java.awt.Color;
 import java.awt.Font;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import javax.swing.text.AttributeSet;
-import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultStyledDocument;
-import javax.swing.text.Document;
 import javax.swing.text.Style;
 import javax.swing.text.StyleConstants;
 
 import io.github.markbernard.jnotepad.ApplicationPreferences;
+import io.github.markbernard.jnotepad.document.BulkStyledDocument;
+import io.github.markbernard.jnotepad.document.PieceTableContent;
+import io.github.markbernard.jnotepad.document.StyledBatch;
 
 /**
+ * Styles Java source for display. The text is split into tokens by {@link JavaLexer} 
+ * and each run is given the style for its token type.
+ * 
  * @author Mark Bernard
  *
  */
@@ -48,131 +50,98 @@ public class JavaDocumentParser {
     private static final String NUMBER_STYLE = "number";
     private static final String[] STYLES = {DEFAULT_STYLE, KEYWORD_STYLE, COMMENT_STYLE, STRING_STYLE, NUMBER_STYLE};
     
-    private static final String KEYWORDS_PATTERN = "(abstract|continue|for|new|switch|assert|default|goto|package|synchronized|boolean|do|if|private|"
-            + "this|break|double|implements|protected|throw|byte|else|import|public|throws|case|enum|instanceof|return|transient|catch|extends|int|"
-            + "short|try|char|final|interface|static|void|class|finally|long|strictfp|volatile|const|float|native|super|while)\\W{1}";
+    private static final int READ_SIZE = 65536;
     
-    StringBuilder debugBuffer = new StringBuilder();
-    private Map<String, AttributeSet> styleMap;
+    private AttributeSet[] tokenStyles;
+    private LineStates lineStates;
     
     /**
-     * Parse the provided reader and place the styled document in the provided document interface.
+     * Parse the provided reader and collect the styled text in the provided batch. 
+     * {@link #createStyles(DefaultStyledDocument)} must be called first with the 
+     * document the batch will be inserted into. This method does not touch the 
+     * document so it can run away from the event dispatch thread. The lexer state 
+     * at the start of each line is kept for {@link #createHighlighter(BulkStyledDocument, PieceTableContent)}.
      * 
-     * @param document
      * @param reader
+     * @param batch
      * @throws IOException
      */
-    public void parseStream(DefaultStyledDocument document, Reader reader) throws IOException {
-        styleMap = new HashMap<>();
-        createStyles(document);
-        int offset = 0;
-        StringBuilder buffer = new StringBuilder();
-        BufferedReader in = new BufferedReader(reader);
-        char[] buf = new char[1];
-        int read = -1;
-        debugBuffer.setLength(0);
-        while ((read = in.read(buf)) > -1) {
-            if (read > 0) { 
-                buffer.append(buf[0]);
-                debugBuffer.append(buf[0]);
-                String content = buffer.toString();
-                if (content.matches("\\s")) {
-                    try {
-                        document.insertString(offset, content, styleMap.get(DEFAULT_STYLE));
-                        buffer.setLength(0);
-                        offset += content.length();
-                    } catch (BadLocationException e) {
-                        e.printStackTrace();
-                    }
-                } else if (content.startsWith("//")) {
-                    offset += parseSingleLineComment(buffer, in, document, offset);
-                } else if (content.startsWith("/*")) {
-                    offset += parseMultiLineComment(buffer, in, document, offset);
-                } else if (content.startsWith("\"")) {
-                    offset += parseDoubleQuote(buffer, in, document, offset);
-                } else if (content.startsWith("'")) {
-                    offset += parseSingleQuote(buffer, in, document, offset);
-                } else if (content.matches(KEYWORDS_PATTERN)) {
-                    try {
-                        document.insertString(offset, content.substring(0, content.length() - 1), styleMap.get(KEYWORD_STYLE));
-                        offset += content.length() - 1;
-                        document.insertString(offset, content.substring(content.length() - 1), styleMap.get(DEFAULT_STYLE));
-                        offset++;
-                        buffer.setLength(0);
-                    } catch (BadLocationException e) {
-                        e.printStackTrace();
-                    }
-                } else if (content.matches("\\d+\\W{1}")) {
-                    try {
-                        document.insertString(offset, content.substring(0, content.length() - 1), styleMap.get(NUMBER_STYLE));
-                        offset += content.length() - 1;
-                        document.insertString(offset, content.substring(content.length() - 1), styleMap.get(DEFAULT_STYLE));
-                        offset++;
-                        buffer.setLength(0);
-                    } catch (BadLocationException e) {
-                        e.printStackTrace();
-                    }
-                } else if (content.matches("\\w+\\W{1}")) {
-                    try {
-                        document.insertString(offset, content, styleMap.get(DEFAULT_STYLE));
-                        buffer.setLength(0);
-                        offset += content.length();
-                    } catch (BadLocationException e) {
-                        e.printStackTrace();
-                    }
-                } else if (content.matches(".+\\W")) {
-                    try {
-                        document.insertString(offset, content, styleMap.get(DEFAULT_STYLE));
-                        buffer.setLength(0);
-                        offset += content.length();
-                    } catch (BadLocationException e) {
-                        e.printStackTrace();
+    public void parseStream(Reader reader, StyledBatch batch) throws IOException {
+        char[] buffer = new char[READ_SIZE];
+        TokenRuns runs = new TokenRuns();
+        int state = JavaLexer.NORMAL;
+        lineStates = new LineStates();
+        lineStates.add(state);
+        int length = 0;
+        int read = 0;
+        while (read > -1) {
+            if (length == buffer.length) {
+                // a single line does not fit in the buffer
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int searched = length;
+            read = reader.read(buffer, length, buffer.length - length);
+            int end = 0;
+            if (read > -1) {
+                length += read;
+                // only whole lines are lexed so a pass never ends in the middle of a token
+                for (int i = length - 1;i >= searched && end == 0;i--) {
+                    if (buffer[i] == '\n') {
+                        end = i + 1;
                     }
                 }
+            } else {
+                end = length;
+            }
+            if (end > 0) {
+                state = JavaLexer.lex(buffer, 0, end, state, runs, lineStates);
+                appendRuns(buffer, runs, batch);
+                runs.clear();
+                length -= end;
+                System.arraycopy(buffer, end, buffer, 0, length);
             }
         }
     }
     
-    private int parseSingleLineComment(StringBuilder buffer, Reader in, Document document, int offset) throws IOException {
-        return parseToString(buffer, in, document, offset, "\n", styleMap.get(COMMENT_STYLE));
+    /**
+     * Create a highlighter that keeps the styles of the document up to date as it
+     * is edited. If the text of the document was collected by 
+     * {@link #parseStream(Reader, StyledBatch)} it starts out styled, otherwise the 
+     * highlighter styles it as it is shown.
+     * 
+     * @param document
+     * @param content The content of the document, read by the highlighter's worker thread.
+     * @return The highlighter, which still has to be installed.
+     */
+    public JavaHighlighter createHighlighter(BulkStyledDocument document, PieceTableContent content) {
+        JavaHighlighter highlighter = lineStates != null ? 
+                new JavaHighlighter(document, content, tokenStyles, lineStates, true) : 
+                new JavaHighlighter(document, content, tokenStyles, new LineStates(), false);
+        lineStates = null;
+        
+        return highlighter;
     }
     
-    private int parseMultiLineComment(StringBuilder buffer, Reader in, Document document, int offset) throws IOException {
-        return parseToString(buffer, in, document, offset, "*/", styleMap.get(COMMENT_STYLE));
-    }
-
-    private int parseDoubleQuote(StringBuilder buffer, Reader in, Document document, int offset) throws IOException {
-        return parseToString(buffer, in, document, offset, "\"", styleMap.get(STRING_STYLE));
-    }
-
-    private int parseSingleQuote(StringBuilder buffer, Reader in, Document document, int offset) throws IOException {
-        return parseToString(buffer, in, document, offset, "'", styleMap.get(STRING_STYLE));
+    /**
+     * @return The style of text that is not part of any token.
+     */
+    public AttributeSet getDefaultStyle() {
+        return tokenStyles[JavaLexer.DEFAULT];
     }
-
-    private int parseToString(StringBuilder buffer, Reader in, Document document, int offset, String stringToMatch, AttributeSet style) throws IOException {
-        int counter = 0;
-        
-        char[] buf = new char[1];
-        while ((in.read(buf)) > 0) {
-            buffer.append(buf[0]);
-            debugBuffer.append(buf[0]);
-            String content = buffer.toString();
-            if (content.endsWith(stringToMatch)) {
-                try {
-                    document.insertString(offset, content, style);
-                    buffer.setLength(0);
-                    counter += content.length();
-                } catch (BadLocationException e) {
-                    e.printStackTrace();
-                }
-                break;
-            }
-        }        
-        
-        return counter;
+    
+    private void appendRuns(char[] text, TokenRuns runs, StyledBatch batch) {
+        for (int run = 0; run < runs.size(); run++) {
+            batch.append(text, runs.getStart(run), runs.getLength(run), tokenStyles[runs.getType(run)]);
+        }
     }
     
-    private void createStyles(DefaultStyledDocument document) {
+    /**
+     * Add the styles used by the parser to the provided document.
+     * 
+     * @param document
+     */
+    public void createStyles(DefaultStyledDocument document) {
+        tokenStyles = new AttributeSet[STYLES.length];
         Font currentFont = ApplicationPreferences.getCurrentFont();
         Style style = document.addStyle(DEFAULT_STYLE, null);
         StyleConstants.setFontFamily(style, currentFont.getFamily());
@@ -180,35 +149,35 @@ public class JavaDocumentParser {
         StyleConstants.setBold(style, false);
         StyleConstants.setItalic(style, false);
         StyleConstants.setForeground(style, Color.BLACK);
-        styleMap.put(DEFAULT_STYLE, style);
+        tokenStyles[JavaLexer.DEFAULT] = style;
         style = document.addStyle(KEYWORD_STYLE, null);
         StyleConstants.setFontFamily(style, currentFont.getFamily());
         StyleConstants.setFontSize(style, currentFont.getSize());
         StyleConstants.setBold(style, true);
         StyleConstants.setItalic(style, false);
         StyleConstants.setForeground(style, new Color(127, 0, 85));
-        styleMap.put(KEYWORD_STYLE, style);
+        tokenStyles[JavaLexer.KEYWORD] = style;
         style = document.addStyle(COMMENT_STYLE, null);
         StyleConstants.setFontFamily(style, currentFont.getFamily());
         StyleConstants.setFontSize(style, currentFont.getSize());
         StyleConstants.setBold(style, false);
         StyleConstants.setItalic(style, false);
         StyleConstants.setForeground(style, new Color(63, 127, 95));
-        styleMap.put(COMMENT_STYLE, style);
+        tokenStyles[JavaLexer.COMMENT] = style;
         style = document.addStyle(STRING_STYLE, null);
         StyleConstants.setFontFamily(style, currentFont.getFamily());
         StyleConstants.setFontSize(style, currentFont.getSize());
         StyleConstants.setBold(style, true);
         StyleConstants.setItalic(style, false);
         StyleConstants.setForeground(style, new Color(42, 0, 255));
-        styleMap.put(STRING_STYLE, style);
+        tokenStyles[JavaLexer.STRING] = style;
         style = document.addStyle(NUMBER_STYLE, null);
         StyleConstants.setFontFamily(style, currentFont.getFamily());
         StyleConstants.setFontSize(style, currentFont.getSize());
         StyleConstants.setBold(style, true);
         StyleConstants.setItalic(style, false);
         StyleConstants.setForeground(style, new Color(255, 0, 0));
-        styleMap.put(NUMBER_STYLE, style);
+        tokenStyles[JavaLexer.NUMBER] = style;
     }
     
     /**
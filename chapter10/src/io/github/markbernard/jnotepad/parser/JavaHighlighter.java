@@ -0,0 +1,739 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.parser;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Segment;
+
+import io.github.markbernard.jnotepad.document.BulkStyledDocument;
+import io.github.markbernard.jnotepad.document.ParagraphRuns;
+import io.github.markbernard.jnotepad.document.PieceTableContent;
+
+/**
+ * Styles a Java document on demand and keeps the styles up to date as it is 
+ * edited. The lexer state at the start of each line is cached for the lines 
+ * from the top of the document down to a frontier. The lines on screen, plus a 
+ * screen above and below, are styled as soon as they are shown, lexing the 
+ * states between the frontier and the screen first if needed. The rest of the 
+ * document is styled while the application is idle.
+ * <p>
+ * After an edit lexing starts at the first changed line and stops at the first 
+ * line after the edit that starts in the same state as before, so the cost of 
+ * most edits depends on their size rather than the size of the document. When 
+ * an edit changes the state of many lines, such as opening a block comment, 
+ * the frontier is moved back to the edit once the screen is done and the 
+ * remaining lines are left for idle styling. Only lines whose runs actually change 
+ * are restyled.
+ * <p>
+ * Idle styling, and reaching a screen far past the frontier, is lexed by a 
+ * worker thread from a snapshot of the text. Each job records the edit count 
+ * of the document when its snapshot was taken and its results are dropped if 
+ * the document has been edited since, the lines are then lexed again from a 
+ * new snapshot. The runs found by the worker are compared with the document 
+ * and applied by a timer on the event dispatch thread, a few milliseconds at 
+ * a time. The document cannot be changed while it reports an edit, so the 
+ * lines around an edit are lexed on the event dispatch thread once all 
+ * pending edits have been reported.
+ * <p>
+ * Once a file has been loaded the whole document is lexed in a single job 
+ * that is split between all of the cores by {@link ParallelLexer}, which 
+ * makes the state of every line known and replaces the smaller idle jobs.
+ * 
+ * @author Mark Bernard
+ */
+public class JavaHighlighter implements DocumentListener, ChangeListener {
+    /** Lines after an edit that are followed before the rest is left for idle styling. */
+    private static final int MAX_FOLLOW_LINES = 1000;
+    /** Characters between the frontier and the screen that are lexed without the worker. */
+    private static final int MAX_SYNC_STATE_CHARS = 65536;
+    /** Characters lexed by a job that only finds the line states. */
+    private static final int STATE_JOB_SIZE = 1 << 20;
+    /** Characters lexed by a job that finds runs to style. */
+    private static final int STYLE_JOB_SIZE = 1 << 17;
+    /** Style jobs lexed ahead of the lines being styled. */
+    private static final int MAX_READY_JOBS = 2;
+    private static final int BACKGROUND_DELAY = 15;
+    private static final long BACKGROUND_SLICE_NANOS = 4000000L;
+    /** Lines styled between checks of the time left in a slice. */
+    private static final int BACKGROUND_LINES_PER_CHECK = 32;
+    // a single thread keeps up since lexing is much faster than styling the document
+    private static final ExecutorService LEX_EXECUTOR = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "Highlight");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BulkStyledDocument document;
+    private final PieceTableContent content;
+    private final AttributeSet[] tokenStyles;
+    private final LineStates lineStates;
+    private final LineStates blockStates;
+    private final TokenRuns runs;
+    private final TokenRuns lineRuns;
+    private final ParagraphRuns changes;
+    private final Segment segment;
+    private final Timer backgroundTimer;
+    private final ArrayDeque<LexJob> readyJobs;
+    private JViewport viewport;
+    private boolean installed;
+    /** Incremented by every edit of the text, read by the worker to drop stale jobs. */
+    private volatile int version;
+    private boolean styleJobRunning;
+    private boolean stateJobRunning;
+    private boolean documentJobRunning;
+    /** The next line of the first ready job to style, -1 before it is started. */
+    private int jobLine;
+    private int jobRun;
+    /** The number of lines, from the top, with a known state. */
+    private int knownLines;
+    /** No line before this one needs to be styled by the timer. */
+    private int backgroundLine;
+    private int visibleFirst;
+    private int visibleLast;
+    private boolean pending;
+    private boolean applying;
+    private int damageStart;
+    private int damageEnd;
+
+    /**
+     * @param document The document to keep styled.
+     * @param content The content of the document.
+     * @param tokenStyles The style for each token type.
+     * @param lineStates The state at the start of the first lines of the document.
+     * @param styled true if the lines in lineStates are already styled.
+     */
+    JavaHighlighter(BulkStyledDocument document, PieceTableContent content, AttributeSet[] tokenStyles, 
+            LineStates lineStates, boolean styled) {
+        this.document = document;
+        this.content = content;
+        this.tokenStyles = tokenStyles;
+        this.lineStates = lineStates;
+        int lineCount = document.getDefaultRootElement().getElementCount();
+        // a load that failed part of the way through leaves lines that were lexed but never inserted
+        knownLines = Math.max(1, Math.min(lineStates.size(), lineCount));
+        lineStates.setSize(lineCount);
+        for (int line=0;line<knownLines;line++) {
+            lineStates.setStyled(line, styled);
+        }
+        backgroundLine = styled ? knownLines - 1 : 0;
+        blockStates = new LineStates();
+        runs = new TokenRuns();
+        lineRuns = new TokenRuns();
+        changes = new ParagraphRuns();
+        segment = new Segment();
+        readyJobs = new ArrayDeque<>();
+        jobLine = -1;
+        damageStart = Integer.MAX_VALUE;
+        damageEnd = -1;
+        backgroundTimer = new Timer(BACKGROUND_DELAY, (e) -> styleReadyJobs());
+    }
+
+    /**
+     * Start following the document and the viewport showing it. Must be called 
+     * on the event dispatch thread.
+     * 
+     * @param viewport The viewport of the text component showing the document.
+     */
+    public void install(JViewport viewport) {
+        this.viewport = viewport;
+        installed = true;
+        document.addDocumentListener(this);
+        viewport.addChangeListener(this);
+        highlightVisible();
+        requestBackground();
+    }
+
+    /**
+     * Stop styling the document.
+     */
+    public void uninstall() {
+        installed = false;
+        // jobs still queued for the worker are skipped
+        version++;
+        readyJobs.clear();
+        backgroundTimer.stop();
+        document.removeDocumentListener(this);
+        if (viewport != null) {
+            viewport.removeChangeListener(this);
+        }
+    }
+
+    /**
+     * Style any lines on screen, or close to it, that are not styled yet.
+     */
+    public void highlightVisible() {
+        if (damageEnd < 0 && installed) {
+            updateVisibleLines();
+            styleVisible();
+        }
+    }
+
+    /**
+     * Style the lines found by the last look at the screen. Finding them lays out 
+     * the text component, so it is only done when the screen may have changed.
+     */
+    private void styleVisible() {
+        if (damageEnd >= 0 || !installed) {
+            // the states after the damage are not reliable until the pending pass has run
+            return;
+        }
+        Element root = document.getDefaultRootElement();
+        visibleLast = Math.min(visibleLast, root.getElementCount() - 1);
+        if (knownLines <= visibleLast) {
+            int frontierStart = root.getElement(knownLines - 1).getStartOffset();
+            if (root.getElement(visibleLast).getStartOffset() - frontierStart <= MAX_SYNC_STATE_CHARS) {
+                computeStates(visibleLast);
+            } else {
+                // the lines past the frontier are styled once the worker has found their states
+                requestStates();
+            }
+        }
+        int last = Math.min(visibleLast, knownLines - 1);
+        for (int line=visibleFirst;line<=last;line++) {
+            if (!lineStates.isStyled(line)) {
+                lexLine(root, line, lineStates.get(line), true);
+            }
+        }
+        applyChanges();
+    }
+
+    @Override
+    public void stateChanged(ChangeEvent e) {
+        highlightVisible();
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        damage(e);
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        damage(e);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        if (!applying) {
+            // an undo put back styles from before a pass, which may also have covered later edits
+            Element root = document.getDefaultRootElement();
+            int first = root.getElementIndex(e.getOffset());
+            markUnstyled(first, root.getElementIndex(e.getOffset() + e.getLength()));
+            backgroundLine = Math.min(backgroundLine, first);
+            schedule();
+        }
+    }
+
+    /**
+     * Adjust the cached lines to the edit and mark the lines it touched.
+     */
+    private void damage(DocumentEvent e) {
+        version++;
+        Element root = document.getDefaultRootElement();
+        int first = root.getElementIndex(e.getOffset());
+        int last = e.getType() == DocumentEvent.EventType.REMOVE ? first : root.getElementIndex(e.getOffset() + e.getLength());
+        DocumentEvent.ElementChange change = e.getChange(root);
+        if (change != null) {
+            // the paragraph holding the edit can be kept and split, so the change may start after it
+            int index = change.getIndex();
+            int removed = change.getChildrenRemoved().length;
+            int added = change.getChildrenAdded().length;
+            int moved = added - removed;
+            // the line holding the edit starts where it did, so its state does not change
+            int firstState = lineStates.get(first);
+            lineStates.replaceLines(index, removed, added);
+            lineStates.set(first, firstState);
+            last = Math.max(last, index + added - 1);
+            if (knownLines > index) {
+                // known lines after the change move with it, unless the change reaches past them
+                knownLines = index + removed <= knownLines ? knownLines + moved : Math.max(first + 1, index);
+            }
+            if (backgroundLine > index) {
+                backgroundLine = Math.max(index, backgroundLine + moved);
+            }
+            if (damageEnd >= 0) {
+                // lines already marked move with the lines after the change
+                if (damageStart > index) {
+                    damageStart = Math.max(index, damageStart + moved);
+                }
+                if (damageEnd >= index) {
+                    damageEnd = Math.max(index, damageEnd + moved);
+                }
+            }
+        }
+        if (first < knownLines) {
+            markUnstyled(first, last);
+            damageStart = Math.min(damageStart, first);
+            damageEnd = Math.max(damageEnd, last);
+        }
+        backgroundLine = Math.min(backgroundLine, first);
+        schedule();
+    }
+
+    private void markUnstyled(int first, int last) {
+        int end = Math.min(last, knownLines - 1);
+        for (int line=first;line<=end;line++) {
+            lineStates.setStyled(line, false);
+        }
+    }
+
+    private void schedule() {
+        if (!pending) {
+            pending = true;
+            SwingUtilities.invokeLater(() -> highlight());
+        }
+    }
+
+    /**
+     * Lex from the first damaged line until the end of the damage has been passed 
+     * and a line starts in the state it did before. Lines off screen are only 
+     * lexed for their state and left for the timer to style.
+     */
+    private void highlight() {
+        pending = false;
+        updateVisibleLines();
+        if (damageEnd >= 0 && installed) {
+            Element root = document.getDefaultRootElement();
+            int lineCount = root.getElementCount();
+            int line = Math.min(damageStart, lineCount - 1);
+            int state = lineStates.get(line);
+            while (true) {
+                state = lexLine(root, line, state, line >= visibleFirst && line <= visibleLast);
+                line++;
+                if (line >= knownLines) {
+                    if (line == knownLines && line < lineCount) {
+                        lineStates.set(line, state);
+                        knownLines++;
+                    }
+                    break;
+                }
+                if (line > damageEnd) {
+                    if (lineStates.get(line) == state) {
+                        break;
+                    }
+                    if (line > damageEnd + MAX_FOLLOW_LINES && (line < visibleFirst || line > visibleLast)) {
+                        // the states of the remaining lines are found again by the timer
+                        lineStates.set(line, state);
+                        knownLines = line + 1;
+                        break;
+                    }
+                }
+                lineStates.set(line, state);
+            }
+            damageStart = Integer.MAX_VALUE;
+            damageEnd = -1;
+            applyChanges();
+        }
+        styleVisible();
+        requestBackground();
+    }
+
+    /**
+     * Lex the whole document on the worker, using all of the cores, and style 
+     * it from the results while the application is idle. The results are 
+     * dropped if the document is edited before they are ready.
+     */
+    public void highlightAll() {
+        if (installed && !documentJobRunning) {
+            Element root = document.getDefaultRootElement();
+            PieceTableContent.Snapshot snapshot = content.createSnapshot();
+            documentJobRunning = true;
+            LEX_EXECUTOR.execute(new LexJob(snapshot, version, 0, root.getElementCount() - 1, JavaLexer.NORMAL, 
+                    0, snapshot.getLength(), true, true));
+        }
+    }
+
+    /**
+     * Make sure the worker is lexing the next lines that need styling and that the 
+     * timer is running while there are runs to apply.
+     */
+    private void requestBackground() {
+        if (!installed || damageEnd >= 0) {
+            return;
+        }
+        if (!readyJobs.isEmpty() && readyJobs.peekLast().version != version) {
+            // the next job is never lexed ahead from a stale one
+            readyJobs.clear();
+            jobLine = -1;
+        }
+        Element root = document.getDefaultRootElement();
+        int lineCount = root.getElementCount();
+        while (backgroundLine < knownLines && lineStates.isStyled(backgroundLine)) {
+            backgroundLine++;
+        }
+        if (backgroundLine >= lineCount) {
+            // every line is known and styled
+            readyJobs.clear();
+            jobLine = -1;
+        } else if (!styleJobRunning && readyJobs.size() < MAX_READY_JOBS) {
+            LexJob lastJob = readyJobs.peekLast();
+            if (lastJob == null) {
+                int first = Math.min(backgroundLine, knownLines - 1);
+                submit(first, lineStates.get(first), STYLE_JOB_SIZE, true);
+            } else if (lastJob.lastLine < lineCount - 1) {
+                // lexed ahead from the end of the last job before its lines are styled
+                submit(lastJob.lastLine + 1, lastJob.states.get(lastJob.lastLine - lastJob.firstLine), STYLE_JOB_SIZE, true);
+            }
+        }
+        if (readyJobs.isEmpty()) {
+            backgroundTimer.stop();
+        } else if (!backgroundTimer.isRunning()) {
+            backgroundTimer.start();
+        }
+    }
+
+    /**
+     * Ask the worker for the states of the next block of lines past the frontier.
+     */
+    private void requestStates() {
+        if (!stateJobRunning) {
+            int first = knownLines - 1;
+            submit(first, lineStates.get(first), STATE_JOB_SIZE, false);
+        }
+    }
+
+    /**
+     * Queue a job for the worker, lexing whole lines from the first one until 
+     * the provided number of characters has been reached.
+     */
+    private void submit(int firstLine, int firstState, int size, boolean style) {
+        Element root = document.getDefaultRootElement();
+        int start = root.getElement(firstLine).getStartOffset();
+        int lastLine = Math.max(firstLine, root.getElementIndex(start + size));
+        if (!style) {
+            // the states are only needed up to the last line on screen
+            lastLine = Math.max(firstLine, Math.min(lastLine, visibleLast - 1));
+        }
+        PieceTableContent.Snapshot snapshot = content.createSnapshot();
+        int end = Math.min(root.getElement(lastLine).getEndOffset(), snapshot.getLength());
+        if (style) {
+            styleJobRunning = true;
+        } else {
+            stateJobRunning = true;
+        }
+        LEX_EXECUTOR.execute(new LexJob(snapshot, version, firstLine, lastLine, firstState, start, end, style, false));
+    }
+
+    /**
+     * Called on the event dispatch thread when the worker is done with a job.
+     */
+    private void finished(LexJob job) {
+        if (job.wholeDocument) {
+            documentJobRunning = false;
+        } else if (job.style) {
+            styleJobRunning = false;
+        } else {
+            stateJobRunning = false;
+        }
+        if (!installed) {
+            return;
+        }
+        if (job.version == version) {
+            if (job.wholeDocument) {
+                applyStates(job);
+                // the document job covers every line the smaller jobs would have
+                readyJobs.clear();
+                jobLine = -1;
+                readyJobs.add(job);
+            } else if (job.style) {
+                readyJobs.add(job);
+            } else {
+                applyStates(job);
+            }
+        }
+        // a stale job is asked for again from a snapshot of the current text
+        if (job.style) {
+            requestBackground();
+        } else {
+            styleVisible();
+        }
+    }
+
+    private void applyStates(LexJob job) {
+        if (job.firstLine < knownLines && lineStates.get(job.firstLine) == job.firstState) {
+            int count = job.states.size();
+            for (int i=0;i<count;i++) {
+                int line = job.firstLine + 1 + i;
+                if (line >= knownLines) {
+                    lineStates.set(line, job.states.get(i));
+                }
+            }
+            knownLines = Math.max(knownLines, job.firstLine + 1 + count);
+        }
+    }
+
+    /**
+     * Style lines from the ready jobs until the time for the slice runs out, 
+     * moving the frontier down as it goes.
+     */
+    private void styleReadyJobs() {
+        if (damageEnd >= 0) {
+            return;
+        }
+        Element root = document.getDefaultRootElement();
+        long deadline = System.nanoTime() + BACKGROUND_SLICE_NANOS;
+        while (!readyJobs.isEmpty() && System.nanoTime() < deadline) {
+            LexJob job = readyJobs.peek();
+            if (job.version != version || (jobLine < 0 && (job.firstLine > backgroundLine || 
+                    job.firstLine >= knownLines || lineStates.get(job.firstLine) != job.firstState))) {
+                // the lines were lexed from text or a state that has since changed, or lines before them were missed
+                readyJobs.clear();
+                jobLine = -1;
+                break;
+            }
+            if (jobLine < 0) {
+                // the lines before the background line are already styled, the frontier line is kept to extend it
+                jobLine = Math.max(job.firstLine, Math.min(backgroundLine, knownLines - 1));
+                jobRun = 0;
+            }
+            int end = Math.min(job.lastLine + 1, jobLine + BACKGROUND_LINES_PER_CHECK);
+            for (;jobLine<end;jobLine++) {
+                Element paragraph = root.getElement(jobLine);
+                int start = paragraph.getStartOffset();
+                int lineEnd = Math.min(paragraph.getEndOffset(), document.getLength());
+                jobRun = splitRuns(job.runs, jobRun, start - job.start, lineEnd - job.start);
+                if (!lineStates.isStyled(jobLine)) {
+                    styleLine(paragraph, jobLine, start, lineRuns);
+                }
+                int index = jobLine - job.firstLine;
+                if (jobLine + 1 == knownLines && index < job.states.size()) {
+                    lineStates.set(knownLines, job.states.get(index));
+                    knownLines++;
+                }
+            }
+            backgroundLine = Math.max(backgroundLine, jobLine);
+            if (jobLine > job.lastLine) {
+                readyJobs.poll();
+                jobLine = -1;
+            }
+            // applied as it goes so the time taken by the document counts against the slice
+            applyChanges();
+        }
+        requestBackground();
+    }
+
+    /**
+     * Copy the part of the runs of a job that covers a line, relative to the 
+     * start of the line. The lexer merges runs across line breaks.
+     * 
+     * @return The first run that reaches into the line, where the search for the next line starts.
+     */
+    private int splitRuns(TokenRuns jobRuns, int run, int lineStart, int lineEnd) {
+        lineRuns.clear();
+        int count = jobRuns.size();
+        while (run < count && jobRuns.getStart(run) + jobRuns.getLength(run) <= lineStart) {
+            run++;
+        }
+        for (int next = run; next < count && jobRuns.getStart(next) < lineEnd; next++) {
+            int start = Math.max(jobRuns.getStart(next), lineStart);
+            int end = Math.min(jobRuns.getStart(next) + jobRuns.getLength(next), lineEnd);
+            lineRuns.add(start - lineStart, end - start, jobRuns.getType(next));
+        }
+        
+        return run;
+    }
+
+    /**
+     * Find the lines on screen and add a screen of lines above and below them.
+     */
+    @SuppressWarnings("deprecation")
+    private void updateVisibleLines() {
+        Element root = document.getDefaultRootElement();
+        int lineCount = root.getElementCount();
+        if (viewport == null) {
+            visibleFirst = 0;
+            visibleLast = lineCount - 1;
+            return;
+        }
+        JTextComponent textComponent = (JTextComponent)viewport.getView();
+        Rectangle viewRect = viewport.getViewRect();
+        int first = root.getElementIndex(Math.max(0, textComponent.viewToModel(new Point(0, viewRect.y))));
+        int last = root.getElementIndex(Math.max(0, textComponent.viewToModel(
+                new Point(viewRect.width, viewRect.y + viewRect.height))));
+        int margin = last - first + 1;
+        visibleFirst = Math.max(0, first - margin);
+        visibleLast = Math.min(lineCount - 1, last + margin);
+    }
+
+    /**
+     * Move the frontier down to the provided line, lexing a block of lines at a 
+     * time without styling them.
+     */
+    private void computeStates(int line) {
+        Element root = document.getDefaultRootElement();
+        while (knownLines <= line) {
+            int first = knownLines - 1;
+            int start = root.getElement(first).getStartOffset();
+            int last = Math.max(first, Math.min(line - 1, root.getElementIndex(start + MAX_SYNC_STATE_CHARS)));
+            int end = root.getElement(last).getEndOffset();
+            try {
+                document.getText(start, end - start, segment);
+            } catch (BadLocationException e) {
+                //should not occur as the lines are all before the last one
+                e.printStackTrace();
+            }
+            runs.clear();
+            blockStates.clear();
+            JavaLexer.lex(segment.array, segment.offset, segment.count, lineStates.get(first), runs, blockStates);
+            for (int i=0;i<blockStates.size();i++) {
+                lineStates.set(first + 1 + i, blockStates.get(i));
+            }
+            knownLines = first + 1 + blockStates.size();
+        }
+    }
+
+    /**
+     * Lex a single line, styling it if asked.
+     * 
+     * @return The state at the start of the next line.
+     */
+    private int lexLine(Element root, int line, int state, boolean style) {
+        Element paragraph = root.getElement(line);
+        int start = paragraph.getStartOffset();
+        // the last paragraph ends after the end of the text
+        int end = Math.min(paragraph.getEndOffset(), document.getLength());
+        try {
+            document.getText(start, end - start, segment);
+        } catch (BadLocationException e) {
+            //should not occur as the range is inside the paragraph
+            e.printStackTrace();
+        }
+        runs.clear();
+        int nextState = JavaLexer.lex(segment, state, runs);
+        if (style) {
+            styleLine(paragraph, line, start, runs);
+        }
+        
+        return nextState;
+    }
+
+    /**
+     * Add the runs of a line to the changes if they differ from the elements it 
+     * already has.
+     * 
+     * @param runs The runs of the line, relative to its start.
+     */
+    private void styleLine(Element paragraph, int line, int start, TokenRuns runs) {
+        if (runs.size() == 0) {
+            runs.add(0, 1, JavaLexer.DEFAULT);
+        }
+        if (!matches(paragraph, start, runs)) {
+            changes.addParagraph(line);
+            for (int run = 0; run < runs.size(); run++) {
+                changes.addRun(start + runs.getStart(run) + runs.getLength(run), tokenStyles[runs.getType(run)]);
+            }
+        }
+        lineStates.setStyled(line, true);
+    }
+
+    private boolean matches(Element paragraph, int start, TokenRuns runs) {
+        int count = runs.size();
+        if (paragraph.getElementCount() != count) {
+            return false;
+        }
+        for (int run = 0; run < count; run++) {
+            Element element = paragraph.getElement(run);
+            int end = run == count - 1 ? paragraph.getEndOffset() : start + runs.getStart(run) + runs.getLength(run);
+            if (element.getEndOffset() != end || !element.getAttributes().isEqual(tokenStyles[runs.getType(run)])) {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+
+    private void applyChanges() {
+        if (changes.size() > 0) {
+            applying = true;
+            try {
+                document.setParagraphRuns(changes);
+            } finally {
+                applying = false;
+            }
+            changes.clear();
+        }
+    }
+
+    /**
+     * Lexes a range of whole lines of a snapshot on the worker thread.
+     */
+    private class LexJob implements Runnable {
+        final PieceTableContent.Snapshot snapshot;
+        final int version;
+        final int firstLine;
+        final int lastLine;
+        final int firstState;
+        final int start;
+        final int end;
+        final boolean style;
+        /** Lexed on all of the cores by {@link ParallelLexer}. */
+        final boolean wholeDocument;
+        /** The runs of the lines, relative to the start of the job. */
+        final TokenRuns runs;
+        /** The state at the start of each line after the first. */
+        final LineStates states;
+
+        LexJob(PieceTableContent.Snapshot snapshot, int version, int firstLine, int lastLine, int firstState, 
+                int start, int end, boolean style, boolean wholeDocument) {
+            this.snapshot = snapshot;
+            this.version = version;
+            this.firstLine = firstLine;
+            this.lastLine = lastLine;
+            this.firstState = firstState;
+            this.start = start;
+            this.end = end;
+            this.style = style;
+            this.wholeDocument = wholeDocument;
+            runs = new TokenRuns();
+            states = new LineStates();
+        }
+
+        @Override
+        public void run() {
+            // a job queued before an edit is not worth lexing
+            if (version == JavaHighlighter.this.version) {
+                if (wholeDocument) {
+                    ParallelLexer.lex(snapshot, start, end, firstState, runs, states);
+                } else {
+                    char[] text = new char[end - start];
+                    snapshot.getChars(start, text.length, text, 0);
+                    JavaLexer.lex(text, 0, text.length, firstState, runs, states);
+                }
+            }
+            SwingUtilities.invokeLater(() -> finished(this));
+        }
+    }
+}
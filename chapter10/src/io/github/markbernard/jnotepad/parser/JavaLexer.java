@@ -0,0 +1,355 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.parser;
+
+import java.util.Arrays;
+
+import javax.swing.text.Segment;
+
+/**
+ * Splits Java source into keywords, comments, strings and numbers in a single 
+ * pass. ASCII characters are sorted with a lookup table and keywords are found 
+ * by walking a trie while the identifier is scanned, so nothing is copied or 
+ * allocated for each token. Everything else, including identifiers that are 
+ * not keywords, is reported as default text.
+ * <p>
+ * A range must start at the beginning of a line and end at the end of a line 
+ * or of the text. Block comments and text blocks are the only tokens that can 
+ * continue onto the next line, so the state returned for one range is all that 
+ * is needed to lex the range after it.
+ * 
+ * @author Mark Bernard
+ */
+public class JavaLexer {
+    /** Text that is not part of any other token. */
+    public static final int DEFAULT = 0;
+    /** A reserved word or literal such as true or null. */
+    public static final int KEYWORD = 1;
+    /** A line or block comment. */
+    public static final int COMMENT = 2;
+    /** A string, text block or character literal. */
+    public static final int STRING = 3;
+    /** A numeric literal. */
+    public static final int NUMBER = 4;
+
+    /** The range starts outside of any token. */
+    public static final int NORMAL = 0;
+    /** The range starts inside a block comment. */
+    public static final int IN_BLOCK_COMMENT = 1;
+    /** The range starts inside a text block. */
+    public static final int IN_TEXT_BLOCK = 2;
+
+    private static final String[] KEYWORDS = {"abstract", "assert", "boolean", "break", "byte", "case", "catch", 
+            "char", "class", "const", "continue", "default", "do", "double", "else", "enum", "extends", "false", 
+            "final", "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int", 
+            "interface", "long", "native", "new", "null", "package", "private", "protected", "public", "return", 
+            "short", "static", "strictfp", "super", "switch", "synchronized", "this", "throw", "throws", 
+            "transient", "true", "try", "void", "volatile", "while"};
+
+    private static final byte PLAIN = 0;
+    private static final byte IDENTIFIER = 1;
+    private static final byte DIGIT = 2;
+    private static final byte SLASH = 3;
+    private static final byte QUOTE = 4;
+    private static final byte APOSTROPHE = 5;
+    private static final byte DOT = 6;
+    private static final byte NEWLINE = 7;
+    private static final byte[] CLASSES = new byte[128];
+
+    private static final int LETTERS = 26;
+    /** Child node for each lower case letter, LETTERS entries per node, -1 where there is none. */
+    private static final int[] TRIE;
+    private static final boolean[] KEYWORD_NODE;
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CLASSES[c] = IDENTIFIER;
+            CLASSES[Character.toUpperCase(c)] = IDENTIFIER;
+        }
+        CLASSES['_'] = IDENTIFIER;
+        CLASSES['$'] = IDENTIFIER;
+        for (char c = '0'; c <= '9'; c++) {
+            CLASSES[c] = DIGIT;
+        }
+        CLASSES['/'] = SLASH;
+        CLASSES['"'] = QUOTE;
+        CLASSES['\''] = APOSTROPHE;
+        CLASSES['.'] = DOT;
+        CLASSES['\n'] = NEWLINE;
+
+        int maximumNodes = 1;
+        for (String keyword : KEYWORDS) {
+            maximumNodes += keyword.length();
+        }
+        int[] trie = new int[maximumNodes * LETTERS];
+        Arrays.fill(trie, -1);
+        boolean[] keywordNode = new boolean[maximumNodes];
+        int nodes = 1;
+        for (String keyword : KEYWORDS) {
+            int node = 0;
+            for (int i=0;i<keyword.length();i++) {
+                int index = node * LETTERS + keyword.charAt(i) - 'a';
+                if (trie[index] < 0) {
+                    trie[index] = nodes++;
+                }
+                node = trie[index];
+            }
+            keywordNode[node] = true;
+        }
+        TRIE = Arrays.copyOf(trie, nodes * LETTERS);
+        KEYWORD_NODE = Arrays.copyOf(keywordNode, nodes);
+    }
+
+    /**
+     * Lex the text held by a segment.
+     * 
+     * @param segment
+     * @param state The state returned for the text before the segment.
+     * @param runs Receives the runs, positioned from the start of the segment.
+     * @return The state at the end of the segment.
+     */
+    public static int lex(Segment segment, int state, TokenRuns runs) {
+        return lex(segment.array, segment.offset, segment.count, state, runs, null);
+    }
+
+    /**
+     * Lex a range of characters. Every character of the range ends up in exactly 
+     * one run.
+     * 
+     * @param text
+     * @param offset The first character of the range.
+     * @param count The number of characters in the range.
+     * @param state The state returned for the text before the range.
+     * @param runs Receives the runs, positioned from the start of the range.
+     * @param lineStates Receives the state at the start of each line that begins 
+     * after a line break in the range, can be null.
+     * @return The state at the end of the range.
+     */
+    public static int lex(char[] text, int offset, int count, int state, TokenRuns runs, LineStates lineStates) {
+        int end = offset + count;
+        int position = offset;
+        if (state == IN_BLOCK_COMMENT || state == IN_TEXT_BLOCK) {
+            position = state == IN_BLOCK_COMMENT ? scanBlockComment(text, position, end, lineStates) : 
+                scanTextBlock(text, position, end, lineStates);
+            if (position < 0) {
+                runs.add(0, count, state == IN_BLOCK_COMMENT ? COMMENT : STRING);
+                return state;
+            }
+            runs.add(0, position - offset, state == IN_BLOCK_COMMENT ? COMMENT : STRING);
+        }
+        int plainStart = position;
+        while (position < end) {
+            int start = position;
+            char c = text[position];
+            int type = DEFAULT;
+            byte charClass = c < CLASSES.length ? CLASSES[c] : Character.isJavaIdentifierStart(c) ? IDENTIFIER : PLAIN;
+            switch (charClass) {
+            case IDENTIFIER:
+                int node = 0;
+                while (position < end) {
+                    c = text[position];
+                    if (c >= 'a' && c <= 'z') {
+                        if (node >= 0) {
+                            node = TRIE[node * LETTERS + c - 'a'];
+                        }
+                    } else if (isIdentifierPart(c)) {
+                        node = -1;
+                    } else {
+                        break;
+                    }
+                    position++;
+                }
+                if (node > 0 && KEYWORD_NODE[node]) {
+                    type = KEYWORD;
+                }
+                break;
+            case DIGIT:
+                position = scanNumber(text, position, end);
+                type = NUMBER;
+                break;
+            case DOT:
+                if (position + 1 < end && text[position + 1] >= '0' && text[position + 1] <= '9') {
+                    position = scanNumber(text, position, end);
+                    type = NUMBER;
+                } else {
+                    position++;
+                }
+                break;
+            case SLASH:
+                if (position + 1 < end && text[position + 1] == '/') {
+                    position = scanLineComment(text, position + 2, end);
+                    type = COMMENT;
+                } else if (position + 1 < end && text[position + 1] == '*') {
+                    position = scanBlockComment(text, position + 2, end, lineStates);
+                    if (position < 0) {
+                        addToken(runs, offset, plainStart, start, end, COMMENT);
+                        return IN_BLOCK_COMMENT;
+                    }
+                    type = COMMENT;
+                } else {
+                    position++;
+                }
+                break;
+            case QUOTE:
+                if (position + 2 < end && text[position + 1] == '"' && text[position + 2] == '"') {
+                    position = scanTextBlock(text, position + 3, end, lineStates);
+                    if (position < 0) {
+                        addToken(runs, offset, plainStart, start, end, STRING);
+                        return IN_TEXT_BLOCK;
+                    }
+                } else {
+                    position = scanQuoted(text, position + 1, end, '"');
+                }
+                type = STRING;
+                break;
+            case APOSTROPHE:
+                position = scanQuoted(text, position + 1, end, '\'');
+                type = STRING;
+                break;
+            case NEWLINE:
+                if (lineStates != null) {
+                    lineStates.add(NORMAL);
+                }
+                position++;
+                break;
+            default:
+                position++;
+                break;
+            }
+            if (type != DEFAULT) {
+                addToken(runs, offset, plainStart, start, position, type);
+                plainStart = position;
+            }
+        }
+        runs.add(plainStart - offset, end - plainStart, DEFAULT);
+        
+        return NORMAL;
+    }
+
+    private static void addToken(TokenRuns runs, int offset, int plainStart, int start, int end, int type) {
+        runs.add(plainStart - offset, start - plainStart, DEFAULT);
+        runs.add(start - offset, end - start, type);
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        if (c < CLASSES.length) {
+            byte charClass = CLASSES[c];
+            return charClass == IDENTIFIER || charClass == DIGIT;
+        }
+        
+        return Character.isJavaIdentifierPart(c);
+    }
+
+    /**
+     * Covers decimal, hex, octal and binary literals with underscores, fractions, 
+     * exponents and type suffixes. Malformed literals are still taken as a single number.
+     */
+    private static int scanNumber(char[] text, int position, int end) {
+        boolean hex = position + 1 < end && text[position] == '0' && (text[position + 1] == 'x' || text[position + 1] == 'X');
+        int index = position + 1;
+        while (index < end) {
+            char c = text[index];
+            if (c < CLASSES.length && (CLASSES[c] == DIGIT || CLASSES[c] == IDENTIFIER || c == '.')) {
+                index++;
+            } else if ((c == '+' || c == '-') && isExponent(text[index - 1], hex)) {
+                index++;
+            } else {
+                break;
+            }
+        }
+        
+        return index;
+    }
+
+    private static boolean isExponent(char c, boolean hex) {
+        return hex ? c == 'p' || c == 'P' : c == 'e' || c == 'E';
+    }
+
+    /**
+     * @return The position of the line break that ends the comment.
+     */
+    private static int scanLineComment(char[] text, int position, int end) {
+        while (position < end && text[position] != '\n') {
+            position++;
+        }
+        
+        return position;
+    }
+
+    /**
+     * @return The position after the closing characters or -1 if the range ends first.
+     */
+    private static int scanBlockComment(char[] text, int position, int end, LineStates lineStates) {
+        for (int i = position;i < end;i++) {
+            char c = text[i];
+            if (c == '/' && i > position && text[i - 1] == '*') {
+                return i + 1;
+            } else if (c == '\n' && lineStates != null) {
+                lineStates.add(IN_BLOCK_COMMENT);
+            }
+        }
+        
+        return -1;
+    }
+
+    /**
+     * @return The position after the closing quotes or -1 if the range ends first.
+     */
+    private static int scanTextBlock(char[] text, int position, int end, LineStates lineStates) {
+        while (position < end) {
+            char c = text[position];
+            if (c == '\n' && lineStates != null) {
+                lineStates.add(IN_TEXT_BLOCK);
+                position++;
+            } else if (c == '\\' && position + 1 < end && text[position + 1] != '\n') {
+                position += 2;
+            } else if (c == '"' && position + 2 < end && text[position + 1] == '"' && text[position + 2] == '"') {
+                return position + 3;
+            } else {
+                position++;
+            }
+        }
+        
+        return -1;
+    }
+
+    /**
+     * A string or character literal ends at its closing quote. One that is not 
+     * closed ends at the end of the line.
+     * 
+     * @return The position after the literal.
+     */
+    private static int scanQuoted(char[] text, int position, int end, char quote) {
+        while (position < end) {
+            char c = text[position];
+            if (c == quote) {
+                return position + 1;
+            } else if (c == '\n') {
+                return position;
+            } else if (c == '\\' && position + 1 < end && text[position + 1] != '\n') {
+                position += 2;
+            } else {
+                position++;
+            }
+        }
+        
+        return end;
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.parser;
+
+/**
+ * The {@link JavaLexer} state at the start of each line of a document. With 
+ * the state of a line known, lexing can start at that line instead of at the 
+ * top of the document. Each line also records whether the document already 
+ * shows the styles for its current text and state.
+ * 
+ * @author Mark Bernard
+ */
+public class LineStates {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int STYLED = 1 << 16;
+
+    private int[] states;
+    private int count;
+
+    /**
+     * Create an empty table.
+     */
+    public LineStates() {
+        states = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param state The state at the start of the line after the last one in the table.
+     */
+    public void add(int state) {
+        ensureCapacity(count + 1);
+        states[count++] = state;
+    }
+
+    /**
+     * @param line
+     * @return The state at the start of the line.
+     */
+    public int get(int line) {
+        return states[line] & ~STYLED;
+    }
+
+    /**
+     * Change the state of a line, which leaves it marked as not styled.
+     * 
+     * @param line
+     * @param state
+     */
+    public void set(int line, int state) {
+        states[line] = state;
+    }
+
+    /**
+     * @param line
+     * @return true if the styles of the line match its text and state.
+     */
+    public boolean isStyled(int line) {
+        return (states[line] & STYLED) != 0;
+    }
+
+    /**
+     * @param line
+     * @param styled
+     */
+    public void setStyled(int line, boolean styled) {
+        if (styled) {
+            states[line] |= STYLED;
+        } else {
+            states[line] &= ~STYLED;
+        }
+    }
+
+    /**
+     * @return The number of lines in the table.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Remove all lines.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Add or remove lines at the end of the table. Added lines start outside of 
+     * any token and are not styled.
+     * 
+     * @param size
+     */
+    public void setSize(int size) {
+        ensureCapacity(size);
+        for (int i=count;i<size;i++) {
+            states[i] = JavaLexer.NORMAL;
+        }
+        count = size;
+    }
+
+    /**
+     * Replace lines with new ones that take the state of the first line replaced 
+     * and are not styled.
+     * 
+     * @param line The first line to replace.
+     * @param removed The number of lines to remove.
+     * @param added The number of lines to add in their place.
+     */
+    public void replaceLines(int line, int removed, int added) {
+        int state = line < count ? states[line] & ~STYLED : JavaLexer.NORMAL;
+        ensureCapacity(count - removed + added);
+        System.arraycopy(states, line + removed, states, line + added, count - line - removed);
+        for (int i=0;i<added;i++) {
+            states[line + i] = state;
+        }
+        count += added - removed;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > states.length) {
+            int[] newStates = new int[Math.max(states.length * 2, capacity)];
+            System.arraycopy(states, 0, newStates, 0, count);
+            states = newStates;
+        }
+    }
+}
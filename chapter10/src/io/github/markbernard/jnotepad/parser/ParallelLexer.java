@@ -0,0 +1,215 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.parser;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import io.github.markbernard.jnotepad.document.PieceTableContent;
+
+/**
+ * Lexes a large range of text on all of the cores. The text is split into 
+ * chunks at line breaks and the chunks are lexed in parallel, each one as if 
+ * it started outside of any comment or text block since the real state at its 
+ * start is not known yet. The chunks are then checked in order. A chunk that 
+ * really starts inside a comment or text block is lexed again from its real 
+ * state a line at a time, until a line starts in the same state the parallel 
+ * pass found for it, and the rest of the chunk is kept as it was. Usually 
+ * only a few lines of a chunk are lexed twice.
+ * 
+ * @author Mark Bernard
+ */
+public class ParallelLexer {
+    private static final int CHUNK_SIZE = 1 << 18;
+    private static final int SEARCH_SIZE = 4096;
+
+    /**
+     * Lex whole lines of a snapshot. The results are the same as lexing the 
+     * range with {@link JavaLexer#lex(char[], int, int, int, TokenRuns, LineStates)}.
+     * 
+     * @param snapshot
+     * @param start The start of the first line to lex.
+     * @param end The end of the range.
+     * @param state The state at the start of the first line.
+     * @param runs Receives the runs, positioned from the start of the range.
+     * @param lineStates Receives the state at the start of each line that begins 
+     * after a line break in the range.
+     * @return The state at the end of the range.
+     */
+    public static int lex(PieceTableContent.Snapshot snapshot, int start, int end, int state, TokenRuns runs, 
+            LineStates lineStates) {
+        int[] bounds = findChunkBounds(snapshot, start, end);
+        int firstState = state;
+        Chunk[] chunks = IntStream.range(0, bounds.length - 1).parallel()
+                .mapToObj((chunk) -> lexChunk(snapshot, bounds[chunk], bounds[chunk + 1], 
+                        chunk == 0 ? firstState : JavaLexer.NORMAL))
+                .toArray(Chunk[]::new);
+        int result = state;
+        for (Chunk chunk : chunks) {
+            if (chunk.startState != result) {
+                chunk = repairChunk(snapshot, chunk, result);
+            }
+            int offset = chunk.start - start;
+            int count = chunk.runs.size();
+            for (int i=0;i<count;i++) {
+                // runs of the same type either side of a chunk boundary are merged by the table
+                runs.add(offset + chunk.runs.getStart(i), chunk.runs.getLength(i), chunk.runs.getType(i));
+            }
+            count = chunk.lineStates.size();
+            for (int i=0;i<count;i++) {
+                lineStates.add(chunk.lineStates.get(i));
+            }
+            result = chunk.endState;
+        }
+        
+        return result;
+    }
+
+    /**
+     * @return The start of each chunk followed by the end of the range. Every 
+     * chunk but the first starts directly after a line break.
+     */
+    private static int[] findChunkBounds(PieceTableContent.Snapshot snapshot, int start, int end) {
+        int chunks = Math.max(1, (end - start) / CHUNK_SIZE);
+        int[] bounds = new int[chunks + 1];
+        bounds[0] = start;
+        int count = 1;
+        char[] buffer = new char[SEARCH_SIZE];
+        int position = start;
+        for (int i=1;i<chunks;i++) {
+            // a very long line can reach past the next nominal boundary
+            position = findLineStart(snapshot, Math.max(position, start + i * CHUNK_SIZE), end, buffer);
+            if (position >= end) {
+                break;
+            }
+            bounds[count++] = position;
+        }
+        bounds[count++] = end;
+        
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * @return The position after the first line break at or after the position, 
+     * the end of the range if there is none.
+     */
+    private static int findLineStart(PieceTableContent.Snapshot snapshot, int position, int end, char[] buffer) {
+        while (position < end) {
+            int count = Math.min(buffer.length, end - position);
+            snapshot.getChars(position, count, buffer, 0);
+            for (int i=0;i<count;i++) {
+                if (buffer[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += count;
+        }
+        
+        return end;
+    }
+
+    private static Chunk lexChunk(PieceTableContent.Snapshot snapshot, int start, int end, int state) {
+        char[] text = new char[end - start];
+        snapshot.getChars(start, text.length, text, 0);
+        TokenRuns runs = new TokenRuns();
+        LineStates lineStates = new LineStates();
+        int endState = JavaLexer.lex(text, 0, text.length, state, runs, lineStates);
+        
+        return new Chunk(start, end, state, runs, lineStates, endState);
+    }
+
+    /**
+     * Lex a chunk again from its real starting state, a line at a time, until 
+     * it agrees with the chunk as it was lexed in parallel.
+     */
+    private static Chunk repairChunk(PieceTableContent.Snapshot snapshot, Chunk chunk, int state) {
+        char[] text = new char[chunk.end - chunk.start];
+        snapshot.getChars(chunk.start, text.length, text, 0);
+        TokenRuns runs = new TokenRuns();
+        LineStates lineStates = new LineStates();
+        TokenRuns lineRuns = new TokenRuns();
+        int position = 0;
+        int lineState = state;
+        while (position < text.length) {
+            int lineEnd = position;
+            while (lineEnd < text.length && text[lineEnd++] != '\n') {
+                // find the end of the line, including its break
+            }
+            lineRuns.clear();
+            lineState = JavaLexer.lex(text, position, lineEnd - position, lineState, lineRuns, null);
+            int count = lineRuns.size();
+            for (int i=0;i<count;i++) {
+                runs.add(position + lineRuns.getStart(i), lineRuns.getLength(i), lineRuns.getType(i));
+            }
+            position = lineEnd;
+            if (text[lineEnd - 1] == '\n') {
+                int line = lineStates.size();
+                lineStates.add(lineState);
+                if (lineState == chunk.lineStates.get(line)) {
+                    // the rest of the chunk was lexed from the right state
+                    copyRuns(chunk.runs, position, runs);
+                    count = chunk.lineStates.size();
+                    for (int i=line+1;i<count;i++) {
+                        lineStates.add(chunk.lineStates.get(i));
+                    }
+                    return new Chunk(chunk.start, chunk.end, state, runs, lineStates, chunk.endState);
+                }
+            }
+        }
+        
+        return new Chunk(chunk.start, chunk.end, state, runs, lineStates, lineState);
+    }
+
+    /**
+     * Copy the runs from a position on, splitting the run that crosses it.
+     */
+    private static void copyRuns(TokenRuns source, int position, TokenRuns destination) {
+        int count = source.size();
+        int run = 0;
+        while (run < count && source.getStart(run) + source.getLength(run) <= position) {
+            run++;
+        }
+        for (;run<count;run++) {
+            int start = Math.max(source.getStart(run), position);
+            destination.add(start, source.getStart(run) + source.getLength(run) - start, source.getType(run));
+        }
+    }
+
+    /**
+     * The results of lexing one chunk, positioned from the start of the chunk.
+     */
+    private static class Chunk {
+        final int start;
+        final int end;
+        final int startState;
+        final TokenRuns runs;
+        final LineStates lineStates;
+        final int endState;
+
+        Chunk(int start, int end, int startState, TokenRuns runs, LineStates lineStates, int endState) {
+            this.start = start;
+            this.end = end;
+            this.startState = startState;
+            this.runs = runs;
+            this.lineStates = lineStates;
+            this.endState = endState;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * The MIT License (MIT)
+ * Copyright (c) 2016 Mark Bernard
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of 
+ * this software and associated documentation files (the "Software"), to deal in the 
+ * Software without restriction, including without limitation the rights to use, copy, 
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, 
+ * and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all copies or 
+ * substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR 
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE 
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR 
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package io.github.markbernard.jnotepad.parser;
+
+/**
+ * The runs found by {@link JavaLexer}. Each run is held as three ints, its 
+ * start, its length and its token type, in a single array that grows as 
+ * needed, so lexing a large file creates no object per token. A run that 
+ * directly follows one of the same type is merged into it.
+ * 
+ * @author Mark Bernard
+ */
+public class TokenRuns {
+    private static final int INITIAL_RUNS = 1024;
+
+    private int[] runs;
+    private int count;
+
+    /**
+     * Create an empty table.
+     */
+    public TokenRuns() {
+        runs = new int[INITIAL_RUNS * 3];
+    }
+
+    /**
+     * @param start
+     * @param length
+     * @param type One of the token types defined by {@link JavaLexer}.
+     */
+    public void add(int start, int length, int type) {
+        if (length == 0) {
+            return;
+        }
+        if (count > 0) {
+            int last = (count - 1) * 3;
+            if (runs[last + 2] == type && runs[last] + runs[last + 1] == start) {
+                runs[last + 1] += length;
+                return;
+            }
+        }
+        if (count * 3 == runs.length) {
+            int[] newRuns = new int[runs.length * 2];
+            System.arraycopy(runs, 0, newRuns, 0, runs.length);
+            runs = newRuns;
+        }
+        int index = count * 3;
+        runs[index] = start;
+        runs[index + 1] = length;
+        runs[index + 2] = type;
+        count++;
+    }
+
+    /**
+     * @return The number of runs in the table.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param run
+     * @return The position of the first character of the run.
+     */
+    public int getStart(int run) {
+        return runs[run * 3];
+    }
+
+    /**
+     * @param run
+     * @return The number of characters in the run.
+     */
+    public int getLength(int run) {
+        return runs[run * 3 + 1];
+    }
+
+    /**
+     * @param run
+     * @return The token type of the run.
+     */
+    public int getType(int run) {
+        return runs[run * 3 + 2];
+    }
+
+    /**
+     * Remove all runs so the table can be filled again.
+     */
+    public void clear() {
+        count = 0;
+    }
+}